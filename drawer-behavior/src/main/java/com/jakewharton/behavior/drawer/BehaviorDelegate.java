@@ -16,381 +16,905 @@
  */
 package com.jakewharton.behavior.drawer;
 
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.content.Context;
 import android.os.Build;
-import android.os.SystemClock;
 import android.support.design.widget.CoordinatorLayout;
 import android.support.v4.view.GravityCompat;
-import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.ViewCompat;
-import android.support.v4.widget.ViewDragHelper;
+import android.support.v4.view.WindowInsetsCompat;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.accessibility.AccessibilityEvent;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
 
 import static android.view.View.INVISIBLE;
 import static android.view.View.VISIBLE;
 
-final class BehaviorDelegate extends ViewDragHelper.Callback {
-  private static final int PEEK_DELAY = 160; // ms
-  private static final int MIN_FLING_VELOCITY = 400; // dips per second
-  private static final int FLAG_IS_OPENED = 0x1;
-  private static final int FLAG_IS_OPENING = 0x2;
-  private static final int FLAG_IS_CLOSING = 0x4;
+/**
+ * Applies one drawer's {@link DrawerEngine} to its views, scrim, and listeners. Touch is handled
+ * by its {@link DrawerCoordinator}.
+ */
+final class BehaviorDelegate {
   private static final int DEFAULT_SCRIM_COLOR = 0x99000000;
 
+  private static final Interpolator SETTLE_INTERPOLATOR = new Interpolator() {
+    @Override public float getInterpolation(float t) {
+      return DrawerEngine.settleCurve(t);
+    }
+  };
+
   private final CoordinatorLayout parent;
-  private final View child;
-  private final boolean isLeft;
-  private final ContentScrimDrawer scrimDrawer;
-  private final ViewDragHelper dragger;
-
-  private float initialMotionX;
-  private float initialMotionY;
-  private boolean childrenCanceledTouch;
-  private int openState;
-  private boolean isPeeking;
-  private float onScreen;
-  private int drawerState;
-
-  private int scrimColor = DEFAULT_SCRIM_COLOR;
-
-  private final Runnable peekRunnable = new Runnable() {
+  final View child;
+  final DrawerBehavior behavior;
+  final boolean isLeft;
+  private final DrawerCoordinator coordinator;
+  private boolean draggable;
+  // Created on first need, which is never while the drawer is pinned.
+  private EdgeShadow shadow;
+  private final DrawerEngine engine;
+  private final FrameMetrics metrics;
+  private LatencyTracer latencyTracer;
+  private ValueAnimator.AnimatorUpdateListener propertySettleFrame;
+
+  private boolean propertySettling;
+  private boolean nestedScrolling;
+  private boolean restoredOpen;
+  private boolean pinned;
+  private int pinnedPadding;
+  /** Insets the parent last applied. Only seen when the drawer fits system windows. */
+  private WindowInsetsCompat lastInsets;
+  private boolean openPending;
+  private boolean slidePending;
+
+  private boolean measured;
+  private boolean layoutDeferred;
+  private int lastParentWidthMeasureSpec;
+  private int lastWidthUsed;
+  private int lastParentHeightMeasureSpec;
+  private int lastHeightUsed;
+
+  int scrimColor = DEFAULT_SCRIM_COLOR;
+
+  private final DrawerAccessibility accessibility;
+  private final HardwareLayers layers;
+
+  private final Runnable propertySettleEnd = new Runnable() {
     @Override public void run() {
-      peekDrawer();
+      finishPropertySettle();
     }
   };
-  private final Runnable draggerSettle = new Runnable() {
+  private final Runnable settleFrame = new Runnable() {
     @Override public void run() {
-      if (dragger.continueSettling(true)) {
+      if (settleFrame()) {
         ViewCompat.postOnAnimation(parent, this);
       }
     }
   };
+  private final Runnable parentLayout = new Runnable() {
+    @Override public void run() {
+      parent.requestLayout();
+    }
+  };
+  private final Runnable slideDispatch = new Runnable() {
+    @Override public void run() {
+      dispatchPendingSlide();
+    }
+  };
 
-  BehaviorDelegate(CoordinatorLayout parent, View child, int gravity) {
+  BehaviorDelegate(CoordinatorLayout parent, View child, DrawerBehavior behavior) {
     this.parent = parent;
     this.child = child;
+    this.behavior = behavior;
 
     int absGravity =
-        GravityCompat.getAbsoluteGravity(gravity, ViewCompat.getLayoutDirection(parent));
+        GravityCompat.getAbsoluteGravity(behavior.gravity, ViewCompat.getLayoutDirection(parent));
     this.isLeft = absGravity == Gravity.LEFT;
 
+    engine = new DrawerEngine(isLeft);
     float density = parent.getResources().getDisplayMetrics().density;
-    float minVel = MIN_FLING_VELOCITY * density;
-
-    dragger = ViewDragHelper.create(parent, this);
-    dragger.setEdgeTrackingEnabled(isLeft ? ViewDragHelper.EDGE_LEFT : ViewDragHelper.EDGE_RIGHT);
-    dragger.setMinVelocity(minVel);
+    engine.setVelocityRange((int) (DrawerCoordinator.MIN_FLING_VELOCITY * density),
+        ViewConfiguration.get(parent.getContext()).getScaledMaximumFlingVelocity());
+    accessibility = new DrawerAccessibility(parent, child);
+    layers = new HardwareLayers(parent, child);
+    coordinator = DrawerCoordinator.get(parent);
+
+    WindowManager windowManager =
+        (WindowManager) parent.getContext().getSystemService(Context.WINDOW_SERVICE);
+    metrics = new FrameMetrics(behavior.frameMetricsClock,
+        windowManager.getDefaultDisplay().getRefreshRate());
+  }
 
-    scrimDrawer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
-        ? new ContentScrimDrawer.JellyBeanMr2(parent)
-        : new ContentScrimDrawer.Base(parent, child);
+  /** Create what is needed to drag the drawer over the content. */
+  private void ensureDraggable() {
+    if (draggable) {
+      return;
+    }
+    draggable = true;
+    // Also rejoins the coordinator after the drawer was detached.
+    coordinator.add(this);
+    coordinator.ensureDraggable(this);
+
+    if (shadow == null
+        && behavior.shadowWidth > 0
+        && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      shadow = new EdgeShadow(parent, child, behavior.shadowWidth, behavior.shadowColor, isLeft);
+    }
   }
 
   private boolean isContentView(View child) {
     return child != this.child;
   }
 
-  private boolean isDrawerView(View child) {
-    return child == this.child;
+  /** Drop work posted to the parent so that nothing outside the hierarchy references it. */
+  void onDetachedFromWindow() {
+    coordinator.onDetachedFromWindow();
+    parent.removeCallbacks(settleFrame);
+    parent.removeCallbacks(slideDispatch);
+    parent.removeCallbacks(parentLayout);
+    accessibility.cancel();
+    // A detached drawer no longer takes room beside the content.
+    setPinnedPadding(0);
+    slidePending = false;
+    if (propertySettling) {
+      finishPropertySettle();
+    }
+    if (latencyTracer != null) {
+      latencyTracer.stop();
+    }
+    if (engine.isSettling()) {
+      // Like the drag helper's abort, jump to where the settle was headed.
+      engine.cancelSettle();
+      moveTo(engine.settleTarget());
+      updateDrawerState(child);
+    }
+    dispatchOpenCancelled();
+    coordinator.remove(this);
+    draggable = false;
   }
 
-  private void removeCallbacks() {
-    parent.removeCallbacks(peekRunnable);
+  /** Show {@code edgeSize} pixels of the drawer. Returns false if that would not reveal more. */
+  boolean peek(int edgeSize) {
+    int childLeft = engine.peekLeft(edgeSize);
+    // Only peek if it would mean making the drawer more visible and the drawer isn't locked
+    if (engine.reveals(child.getLeft(), childLeft)) {
+      // Layout requested since the edge touch was cached while the drawer was still at rest.
+      invalidateMeasureCache();
+      settleTo(childLeft, 0);
+      engine.setPeeking(true);
+      return true;
+    }
+    return false;
   }
 
-  private void peekDrawer() {
-    int peekDistance = dragger.getEdgeSize();
-    int childLeft;
-    if (isLeft) {
-      childLeft = -child.getWidth() + peekDistance;
+  /**
+   * Animate the drawer to {@code left}, one step per frame. Returns false when it is already
+   * there.
+   */
+  private boolean settleTo(int left, float xvel) {
+    boolean retarget = engine.isSettling();
+    engine.setSpring(behavior.springSettle);
+    long now = AnimationUtils.currentAnimationTimeMillis();
+    boolean started = engine.startSettle(child.getLeft(), left, xvel, now);
+    if (started) {
+      // A redirected settle is still the same motion as far as frame metrics are concerned.
+      if (!retarget && behavior.frameMetricsListener != null) {
+        metrics.settleStarted();
+      }
+      if (!retarget) {
+        ViewCompat.postOnAnimation(parent, settleFrame);
+      }
     } else {
-      childLeft = parent.getWidth() - peekDistance;
+      // Already where it was asked to go, so anything still moving it is stale.
+      stopSettle();
     }
-    // Only peek if it would mean making the drawer more visible and the drawer isn't locked
-    if ((isLeft && child.getLeft() < childLeft) //
-        || (!isLeft && child.getLeft() > childLeft)) {
-      dragger.smoothSlideViewTo(child, childLeft, child.getTop());
-      ViewCompat.postOnAnimation(parent, draggerSettle);
-      isPeeking = true;
+    updateDrawerState(child);
+    return started;
+  }
 
-      cancelChildViewTouch();
+  /** Move a settle on by one frame. Returns true when it needs another frame. */
+  boolean settleFrame() {
+    DrawerBehavior.FrameMetricsListener metricsListener = behavior.frameMetricsListener;
+    if (metricsListener != null) {
+      metrics.settleFrame();
     }
+    moveTo(engine.stepSettle(AnimationUtils.currentAnimationTimeMillis()));
+    boolean settling = engine.isSettling();
+    if (!settling) {
+      if (metricsListener != null) {
+        metrics.settleFinished(metricsListener, child);
+      }
+      updateDrawerState(child);
+    }
+    // Already inside this frame's animation callbacks so deliver the new offset now.
+    dispatchPendingSlide();
+    return settling;
   }
 
-  private void cancelChildViewTouch() {
-    // Cancel child touches
-    if (!childrenCanceledTouch) {
-      final long now = SystemClock.uptimeMillis();
-      final MotionEvent cancelEvent = MotionEvent.obtain(now, now,
-          MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
-      final int childCount = parent.getChildCount();
-      for (int i = 0; i < childCount; i++) {
-        parent.getChildAt(i).dispatchTouchEvent(cancelEvent);
+  /** Stop a settle where the drawer is, as when it is grabbed part way. */
+  private void stopSettle() {
+    if (engine.isSettling() && !propertySettling) {
+      engine.cancelSettle();
+      parent.removeCallbacks(settleFrame);
+      DrawerBehavior.FrameMetricsListener metricsListener = behavior.frameMetricsListener;
+      if (metricsListener != null) {
+        metrics.settleFinished(metricsListener, child);
       }
-      cancelEvent.recycle();
-      childrenCanceledTouch = true;
+    }
+  }
+
+  /** Move the drawer to {@code left} and update everything which follows its position. */
+  private void moveTo(int left) {
+    int dx = left - child.getLeft();
+    if (dx != 0) {
+      ViewCompat.offsetLeftAndRight(child, dx);
+      onViewPositionChanged(left);
     }
   }
 
   boolean onInterceptTouchEvent(MotionEvent ev) {
-    boolean interceptForDrag = dragger.shouldInterceptTouchEvent(ev);
-    boolean interceptForTap = false;
-    switch (MotionEventCompat.getActionMasked(ev)) {
-      case MotionEvent.ACTION_DOWN: {
-        float x = ev.getX();
-        float y = ev.getY();
-        initialMotionX = x;
-        initialMotionY = y;
-        if (onScreen > 0) {
-          View child = dragger.findTopChildUnder((int) x, (int) y);
-          if (child != null && isContentView(child)) {
-            interceptForTap = true;
-          }
-        }
-        childrenCanceledTouch = false;
-        break;
-      }
+    if (pinned) {
+      return false;
+    }
+    ensureDraggable();
+    return coordinator.onInterceptTouchEvent(ev);
+  }
 
-      case MotionEvent.ACTION_MOVE: {
-        // If we cross the touch slop, don't perform the delayed peek for an edge touch.
-        if (dragger.checkTouchSlop(ViewDragHelper.DIRECTION_ALL)) {
-          removeCallbacks();
-        }
-        break;
-      }
+  boolean onTouchEvent(MotionEvent ev) {
+    if (pinned) {
+      return false;
+    }
+    ensureDraggable();
+    return coordinator.onTouchEvent(ev);
+  }
 
-      case MotionEvent.ACTION_CANCEL:
-      case MotionEvent.ACTION_UP: {
-        closeDrawers(true);
-        childrenCanceledTouch = false;
-        break;
+  /** Called with each move of a drag on this drawer, before the drag helper sees it. */
+  void onDragMove(MotionEvent ev) {
+    if (latencyTracer != null) {
+      // Batched samples are input too. The oldest is the one waiting longest to be drawn.
+      int historySize = ev.getHistorySize();
+      latencyTracer.eventReceived(
+          historySize > 0 ? ev.getHistoricalEventTime(0) : ev.getEventTime());
+    }
+  }
+
+  /**
+   * Settle the drawer closed at the end of a gesture. With {@code peekingOnly} that only happens
+   * if it is peeking.
+   */
+  void close(boolean peekingOnly) {
+    if (peekingOnly && !engine.isPeeking()) {
+      if (engine.state() == DrawerEngine.STATE_IDLE) {
+        // Nothing moved, so no settle will report how the gesture ended.
+        dispatchOpenCancelled();
       }
+      return;
     }
 
-    return interceptForDrag || interceptForTap || isPeeking || childrenCanceledTouch;
+    engine.setPeeking(false);
+    settleTo(engine.closedLeft(), 0);
   }
 
-  boolean onTouchEvent(MotionEvent ev) {
-    dragger.processTouchEvent(ev);
+  void onViewCaptured() {
+    engine.setPeeking(false);
+    stopSettle();
+    invalidateMeasureCache();
+  }
 
-    switch (MotionEventCompat.getActionMasked(ev)) {
-      case MotionEvent.ACTION_DOWN: {
-        initialMotionX = ev.getX();
-        initialMotionY = ev.getY();
-        childrenCanceledTouch = false;
-        break;
-      }
+  void onViewReleased(float xvel) {
+    int left = engine.releasedLeft(xvel);
 
-      case MotionEvent.ACTION_UP: {
-        float x = ev.getX();
-        float y = ev.getY();
-        boolean peekingOnly = true;
-        View touchedView = dragger.findTopChildUnder((int) x, (int) y);
-        if (touchedView != null && isContentView(child)) {
-          final float dx = x - initialMotionX;
-          final float dy = y - initialMotionY;
-          final int slop = dragger.getTouchSlop();
-          if (dx * dx + dy * dy < slop * slop) {
-            // Taps close a dimmed open drawer but only if it isn't locked open.
-            if ((openState & FLAG_IS_OPENED) == FLAG_IS_OPENED) { // TODO isDrawerOpen method?
-              peekingOnly = false;
-            }
-          }
-        }
-        closeDrawers(peekingOnly);
-        break;
+    if (canPropertySettle()) {
+      startPropertySettle(left, xvel);
+    } else {
+      settleTo(left, xvel);
+    }
+  }
+
+  private boolean canPropertySettle() {
+    return behavior.propertySettle
+        && !behavior.springSettle
+        && coordinator.scrimOf(this) instanceof ContentScrimDrawer.Lollipop
+        && parent.isHardwareAccelerated();
+  }
+
+  boolean onStartNestedScroll(View directTargetChild, int nestedScrollAxes) {
+    if (pinned) {
+      return false;
+    }
+    ensureDraggable();
+    // Only take part when the gesture began where the drawer itself could have been dragged
+    // from. In that case the scrolling child owns the gesture and the drawer only receives what
+    // it leaves unconsumed.
+    if ((nestedScrollAxes & ViewCompat.SCROLL_AXIS_HORIZONTAL) == 0
+        || !isContentView(directTargetChild)
+        || !engine.isAtRest()
+        || !coordinator.startNestedScroll(this)) {
+      return false;
+    }
+    nestedScrolling = true;
+    invalidateMeasureCache();
+    return true;
+  }
+
+  void onNestedPreScroll(int dx, int[] consumed) {
+    // Once the drawer is pulled out it moves first, in either direction, until it closes again.
+    if (nestedScrolling && engine.offset() > 0) {
+      consumed[0] = -nestedDragBy(-dx);
+    }
+  }
+
+  void onNestedScroll(int dxUnconsumed) {
+    if (nestedScrolling && dxUnconsumed != 0) {
+      nestedDragBy(-dxUnconsumed);
+    }
+  }
+
+  boolean onNestedPreFling(float velocityX) {
+    if (nestedScrolling && engine.offset() > 0) {
+      // Scroll velocity is opposite to the direction the finger moved.
+      settleNestedDrag(-velocityX);
+      return true;
+    }
+    return false;
+  }
+
+  void onStopNestedScroll() {
+    if (nestedScrolling) {
+      nestedScrolling = false;
+      if (engine.isDragging()) {
+        settleNestedDrag(0);
       }
+    }
+  }
 
-      case MotionEvent.ACTION_CANCEL: {
-        closeDrawers(true);
-        childrenCanceledTouch = false;
-        break;
+  /** Move the drawer by {@code dx} pixels as if dragged. Returns the distance actually moved. */
+  private int nestedDragBy(int dx) {
+    int left = child.getLeft();
+    int newLeft = engine.clamp(left + dx);
+    int moved = newLeft - left;
+    if (moved != 0) {
+      if (!engine.isDragging()) {
+        if (!coordinator.canOpen(this)) {
+          return 0;
+        }
+        dispatchOpenPending();
+        engine.setDragging(true);
+        updateDrawerState(child);
       }
+      moveTo(newLeft);
     }
+    return moved;
+  }
 
-    return true;
+  private void settleNestedDrag(float xvel) {
+    engine.setDragging(false);
+    int left = engine.releasedLeft(xvel);
+    if (canPropertySettle()) {
+      startPropertySettle(left, xvel);
+    } else {
+      settleTo(left, xvel);
+    }
   }
 
-  private void closeDrawers(boolean peekingOnly) {
-    if (peekingOnly && !isPeeking) {
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private void startPropertySettle(int left, float xvel) {
+    // The engine only times this settle. The animators move the drawer and scrim, which needs the
+    // fixed duration of a curve even if the previous settle was a spring.
+    engine.setSpring(false);
+    if (!engine.startSettle(child.getLeft(), left, xvel,
+        AnimationUtils.currentAnimationTimeMillis())) {
+      updateDrawerState(child);
       return;
     }
+    int dx = left - child.getLeft();
+    int duration = engine.settleDuration();
+    propertySettling = true;
+    if (behavior.frameMetricsListener != null) {
+      metrics.settleStarted();
+    }
 
-    boolean needsSettle;
+    int scrimLeft;
+    int scrimRight;
+    float offset = engine.offsetAt(left);
     if (isLeft) {
-      needsSettle = dragger.smoothSlideViewTo(child, -child.getWidth(), child.getTop());
+      scrimLeft = left + child.getWidth();
+      scrimRight = parent.getWidth();
     } else {
-      needsSettle = dragger.smoothSlideViewTo(child, parent.getWidth(), child.getTop());
+      scrimLeft = 0;
+      scrimRight = left;
     }
-    isPeeking = false;
 
-    removeCallbacks();
-
-    if (needsSettle) {
-      ViewCompat.postOnAnimation(parent, draggerSettle);
+    child.animate()
+        .translationX(dx)
+        .setDuration(duration)
+        .setInterpolator(SETTLE_INTERPOLATOR)
+        .setUpdateListener(behavior.frameMetricsListener != null ? propertySettleFrame() : null)
+        .start();
+    ContentScrimDrawer.Lollipop scrim = (ContentScrimDrawer.Lollipop) coordinator.scrimOf(this);
+    scrim.animateTo(scrimLeft, scrimRight, offset, duration, SETTLE_INTERPOLATOR);
+    if (shadow != null) {
+      int edge = isLeft ? scrimLeft : scrimRight;
+      shadow.animateTo(edge, shadowAlpha(offset), duration, SETTLE_INTERPOLATOR);
     }
+    ViewCompat.postOnAnimationDelayed(parent, propertySettleEnd, duration);
+    updateDrawerState(child);
   }
 
-  @Override public void onViewCaptured(View capturedChild, int activePointerId) {
-    isPeeking = false;
+  /** Counts each animation frame of a property animation settle for frame metrics. */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private ValueAnimator.AnimatorUpdateListener propertySettleFrame() {
+    if (propertySettleFrame == null) {
+      propertySettleFrame = new ValueAnimator.AnimatorUpdateListener() {
+        @Override public void onAnimationUpdate(ValueAnimator animation) {
+          metrics.settleFrame();
+        }
+      };
+    }
+    return propertySettleFrame;
   }
 
-  @Override public void onViewReleased(View releasedChild, float xvel, float yvel) {
-    // Offset is how open the drawer is, therefore left/right values
-    // are reversed from one another.
-    float offset = onScreen;
-    int childWidth = releasedChild.getWidth();
+  /**
+   * End a property animation settle by moving the drawer into its layout at the settle's target,
+   * then dispatch its state. Called when the animation ends and when a touch interrupts it.
+   */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  void finishPropertySettle() {
+    if (!propertySettling) {
+      return;
+    }
+    propertySettling = false;
+    engine.cancelSettle();
+    parent.removeCallbacks(propertySettleEnd);
+
+    child.animate().cancel();
+    ((ContentScrimDrawer.Lollipop) coordinator.scrimOf(this)).cancelAnimation();
+    if (shadow != null) {
+      shadow.cancelAnimation();
+    }
+    // Cancelling leaves the views mid-animation. Jump to the target the way an abort does.
+    child.setTranslationX(0);
+    moveTo(engine.settleTarget());
 
-    int left;
-    if (isLeft) {
-      left = xvel > 0 || xvel == 0 && offset > 0.5f ? 0 : -childWidth;
-    } else {
-      int width = parent.getWidth();
-      left = xvel < 0 || xvel == 0 && offset > 0.5f ? width - childWidth : width;
+    DrawerBehavior.FrameMetricsListener metricsListener = behavior.frameMetricsListener;
+    if (metricsListener != null) {
+      metrics.settleFinished(metricsListener, child);
     }
+    updateDrawerState(child);
+  }
 
-    dragger.settleCapturedViewAt(left, releasedChild.getTop());
-    ViewCompat.postOnAnimation(parent, draggerSettle);
+  void onDragStateChanged(boolean dragging) {
+    engine.setDragging(dragging);
+    updateDrawerState(child);
   }
 
-  @Override public void onViewDragStateChanged(int state) {
-    updateDrawerState(state, dragger.getCapturedView());
+  private void updateDrawerState(View activeDrawer) {
+    int state = engine.state();
+
+    if (activeDrawer != null && state == DrawerEngine.STATE_IDLE) {
+      dispatchPendingSlide();
+      switch (engine.settled()) {
+        case DrawerEngine.SETTLED_CLOSED:
+          dispatchOnDrawerClosed(activeDrawer);
+          break;
+        case DrawerEngine.SETTLED_OPENED:
+          dispatchOnDrawerOpened(activeDrawer);
+          break;
+      }
+      // A peek rests while the finger is still down. The gesture has not ended.
+      if (!engine.isPeeking()) {
+        if (engine.offset() == 1) {
+          openPending = false;
+        } else {
+          dispatchOpenCancelled();
+        }
+      }
+    }
+
+    int previousState = engine.committedState();
+    if (engine.commitState()) {
+      if (previousState == DrawerEngine.STATE_IDLE) {
+        layers.promote(behavior.hardwareLayers);
+      } else if (state == DrawerEngine.STATE_IDLE) {
+        layers.restore();
+      }
+      if (state == DrawerEngine.STATE_DRAGGING) {
+        startLatencyTracing();
+      } else if (state == DrawerEngine.STATE_IDLE && latencyTracer != null) {
+        latencyTracer.stop();
+      }
+
+      DrawerBehavior.DrawerListener[] listeners = behavior.drawerListeners;
+      for (DrawerBehavior.DrawerListener listener : listeners) {
+        listener.onDrawerStateChanged(state);
+      }
+    }
   }
 
-  private void updateDrawerState(int activeState, View activeDrawer) {
-    final int state = dragger.getViewDragState();
+  private void startLatencyTracing() {
+    if (behavior.latencyTracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      if (latencyTracer == null) {
+        latencyTracer = new LatencyTracer(parent, behavior.latencyHistogram);
+      }
+      latencyTracer.start();
+    }
+  }
 
-    if (activeDrawer != null && activeState == ViewDragHelper.STATE_IDLE) {
-      if (onScreen == 0) {
-        dispatchOnDrawerClosed(activeDrawer);
-      } else if (onScreen == 1) {
-        dispatchOnDrawerOpened(activeDrawer);
+  /** Tell the listener a gesture may open the drawer, once per gesture. */
+  private void dispatchOpenPending() {
+    if (!openPending && engine.offset() < 1) {
+      openPending = true;
+      DrawerBehavior.PendingOpenListener listener = behavior.pendingOpenListener;
+      if (listener != null) {
+        listener.onDrawerOpenPending(child);
       }
     }
+  }
 
-    if (state != drawerState) {
-      drawerState = state;
+  private void dispatchOpenCancelled() {
+    if (openPending) {
+      openPending = false;
+      DrawerBehavior.PendingOpenListener listener = behavior.pendingOpenListener;
+      if (listener != null) {
+        listener.onDrawerOpenCancelled(child);
+      }
     }
   }
 
   private void dispatchOnDrawerClosed(View drawerView) {
-    if ((openState & FLAG_IS_OPENED) == FLAG_IS_OPENED) {
-      openState = 0;
-
-      updateChildrenImportantForAccessibility(drawerView, false);
-
-      // Only send WINDOW_STATE_CHANGE if the host has window focus. This
-      // may change if support for multiple foreground windows (e.g. IME)
-      // improves.
-      if (parent.hasWindowFocus()) {
-        final View rootView = parent.getRootView();
-        if (rootView != null) {
-          rootView.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
-        }
-      }
+    accessibility.update(false);
+
+    DrawerBehavior.DrawerListener[] listeners = behavior.drawerListeners;
+    for (DrawerBehavior.DrawerListener listener : listeners) {
+      listener.onDrawerClosed(drawerView);
     }
+
+    accessibility.announce(engine.isOpen());
   }
 
   private void dispatchOnDrawerOpened(View drawerView) {
-    if ((openState & FLAG_IS_OPENED) == 0) {
-      openState = FLAG_IS_OPENED;
+    accessibility.update(true);
 
-      updateChildrenImportantForAccessibility(drawerView, true);
+    DrawerBehavior.DrawerListener[] listeners = behavior.drawerListeners;
+    for (DrawerBehavior.DrawerListener listener : listeners) {
+      listener.onDrawerOpened(drawerView);
+    }
 
-      // Only send WINDOW_STATE_CHANGE if the host has window focus.
-      if (parent.hasWindowFocus()) {
-        parent.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
-      }
+    accessibility.announce(engine.isOpen());
 
-      drawerView.requestFocus();
+    drawerView.requestFocus();
+  }
+
+  void onViewPositionChanged(int left) {
+    DrawerBehavior.FrameMetricsListener metricsListener = behavior.frameMetricsListener;
+    long startNanos = metricsListener != null ? metrics.now() : 0;
+
+    // This reverses the positioning shown in onLayout.
+    float offset = engine.offsetAt(left);
+    if (latencyTracer != null) {
+      latencyTracer.positionChanged();
+    }
+
+    // The drawer invalidates its own old and new position as it moves so only the scrim needs
+    // to redraw rather than the entire parent.
+    updateScrim(left, offset);
+
+    setDrawerViewOffset(offset);
+    boolean gone = offset == 0;
+    child.setVisibility(gone ? INVISIBLE : VISIBLE);
+    if (shadow != null) {
+      shadow.setVisible(!gone);
+    }
+
+    if (metricsListener != null) {
+      metricsListener.onDrawerFrame(child, metrics.now() - startNanos);
     }
   }
 
-  private void updateChildrenImportantForAccessibility(View drawerView, boolean isDrawerOpen) {
-    final int childCount = parent.getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      final View child = parent.getChildAt(i);
-      if (!isDrawerOpen && child != this.child
-          || isDrawerOpen && child == drawerView) {
-        // Drawer is closed and this is a content view or this is an
-        // open drawer view, so it should be visible.
-        ViewCompat.setImportantForAccessibility(child,
-            ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
+  private void updateScrim(int childLeft, float offset) {
+    int edge = isLeft ? childLeft + child.getWidth() : childLeft;
+    // The scrim is shared with the parent's other drawers. Only the one on screen updates it.
+    ContentScrimDrawer scrimDrawer = coordinator.claimScrim(this, offset > 0);
+    if (scrimDrawer != null) {
+      if (isLeft) {
+        scrimDrawer.update(edge, 0, parent.getWidth(), parent.getHeight(), offset);
       } else {
-        ViewCompat.setImportantForAccessibility(child,
-            ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+        scrimDrawer.update(0, 0, edge, parent.getHeight(), offset);
       }
+      scrimDrawer.setVisible(offset > 0);
+    }
+    if (shadow != null) {
+      shadow.update(edge, shadowAlpha(offset));
     }
   }
 
-  @Override
-  public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-    int childWidth = changedView.getWidth();
+  /** The shadow fades in over the first edge-size of the drawer coming on screen. */
+  private float shadowAlpha(float offset) {
+    float onScreen = offset * child.getWidth();
+    return Math.max(0, Math.min(onScreen / coordinator.getEdgeSize(), 1));
+  }
 
-    // This reverses the positioning shown in onLayout.
-    float offset;
-    if (isLeft) {
-      int edge = childWidth + left;
-      offset = (float) edge / childWidth;
-      scrimDrawer.setBounds(edge, 0, parent.getWidth(), parent.getHeight());
-    } else {
-      int edge = parent.getWidth() - left;
-      offset = (float) edge / childWidth;
-      scrimDrawer.setBounds(0, 0, left, parent.getHeight());
-    }
+  /** The color for {@link CoordinatorLayout} to draw as the scrim, when it draws it. */
+  int getScrimColor() {
+    ContentScrimDrawer scrimDrawer = coordinator.scrimOf(this);
+    return scrimDrawer instanceof ContentScrimDrawer.Coordinator
+        ? ((ContentScrimDrawer.Coordinator) scrimDrawer).getColor()
+        : scrimColor;
+  }
+
+  float getScrimOpacity() {
+    ContentScrimDrawer scrimDrawer = coordinator.scrimOf(this);
+    return !pinned && scrimDrawer instanceof ContentScrimDrawer.Coordinator
+        ? ((ContentScrimDrawer.Coordinator) scrimDrawer).getOpacity()
+        : 0;
+  }
 
-    int baseAlpha = (scrimColor & 0xff000000) >>> 24;
-    int imag = (int) (baseAlpha * offset);
-    int color = imag << 24 | (scrimColor & 0xffffff);
-    scrimDrawer.setColor(color);
+  boolean isOpen() {
+    return engine.isOpen();
+  }
 
-    setDrawerViewOffset(offset);
-    boolean gone = offset == 0;
-    changedView.setVisibility(gone ? INVISIBLE : VISIBLE);
-    scrimDrawer.setVisible(!gone);
-    parent.invalidate();
+  boolean isPinned() {
+    return pinned;
+  }
+
+  boolean isAtRest() {
+    return engine.isAtRest();
+  }
+
+  boolean isOnScreen() {
+    return engine.offset() > 0;
+  }
+
+  boolean isPeeking() {
+    return engine.isPeeking();
+  }
+
+  boolean isSettling() {
+    return engine.isSettling();
+  }
+
+  int clamp(int left) {
+    return engine.clamp(left);
+  }
+
+  /**
+   * Mark the drawer as open ahead of its first layout, which then places it and its scrim
+   * directly at their open positions rather than settling there.
+   */
+  void restoreOpen() {
+    setDrawerViewOffset(1);
+    engine.markOpen();
+    restoredOpen = true;
+    invalidateMeasureCache();
   }
 
   private void setDrawerViewOffset(float slideOffset) {
-    if (slideOffset == onScreen) {
+    if (!engine.setOffset(slideOffset)) {
       return;
     }
 
-    onScreen = slideOffset;
+    // Listeners see at most one offset per frame, the latest.
+    if (!slidePending && behavior.drawerListeners.length != 0) {
+      slidePending = true;
+      ViewCompat.postOnAnimation(parent, slideDispatch);
+    }
+  }
+
+  void dispatchPendingSlide() {
+    if (slidePending) {
+      slidePending = false;
+      parent.removeCallbacks(slideDispatch);
+      float offset = engine.offset();
+      DrawerBehavior.DrawerListener[] listeners = behavior.drawerListeners;
+      for (DrawerBehavior.DrawerListener listener : listeners) {
+        listener.onDrawerSlide(child, offset);
+      }
+    }
+  }
+
+  void onEdgeTouched() {
+    // Measure ahead of the peek so it shows the drawer's current content.
+    invalidateMeasureCache();
+    dispatchOpenPending();
+  }
+
+  void onEdgeDragStarted() {
+    dispatchOpenPending();
   }
 
-  @Override public void onEdgeTouched(int edgeFlags, int pointerId) {
-    parent.postDelayed(peekRunnable, PEEK_DELAY);
+  void onApplyWindowInsets(WindowInsetsCompat insets) {
+    lastInsets = insets;
   }
 
-  @Override public boolean tryCaptureView(View child, int pointerId) {
-    return isDrawerView(child);
+  /** Give back the room taken beside the content when the drawer is hidden while pinned. */
+  void onMeasureGone(int parentWidthMeasureSpec, int parentHeightMeasureSpec) {
+    updatePinnedPadding(0, parentWidthMeasureSpec, parentHeightMeasureSpec);
   }
 
-  @Override public void onEdgeDragStarted(int edgeFlags, int pointerId) {
-    if (((edgeFlags & ViewDragHelper.EDGE_LEFT) == ViewDragHelper.EDGE_LEFT && isLeft)
-        || ((edgeFlags & ViewDragHelper.EDGE_RIGHT) == ViewDragHelper.EDGE_RIGHT && !isLeft)) {
-      dragger.captureChildView(child, pointerId);
+  /**
+   * Returns true to keep the drawer's previous measurement. That happens while the drawer is
+   * closed and at rest and the parent's constraints are unchanged, so relayouts of the content
+   * do not re-measure the drawer's hierarchy.
+   */
+  boolean onMeasureChild(int parentWidthMeasureSpec, int widthUsed, int parentHeightMeasureSpec,
+      int heightUsed) {
+    boolean pinned = behavior.isPinned(View.MeasureSpec.getSize(parentWidthMeasureSpec));
+    if (pinned != this.pinned) {
+      setPinned(pinned);
     }
+    if (pinned) {
+      // Measured as though the padding which makes room for it beside the content were not there.
+      parent.onMeasureChild(child, parentWidthMeasureSpec, widthUsed - pinnedPadding,
+          parentHeightMeasureSpec, heightUsed);
+      updatePinnedPadding(child.getMeasuredWidth(), parentWidthMeasureSpec,
+          parentHeightMeasureSpec);
+      return true;
+    }
+    updatePinnedPadding(0, parentWidthMeasureSpec, parentHeightMeasureSpec);
+
+    if (measured
+        && engine.isAtRest()
+        && parentWidthMeasureSpec == lastParentWidthMeasureSpec
+        && widthUsed == lastWidthUsed
+        && parentHeightMeasureSpec == lastParentHeightMeasureSpec
+        && heightUsed == lastHeightUsed) {
+      layoutDeferred = true;
+      return true;
+    }
+    measured = true;
+    layoutDeferred = false;
+    lastParentWidthMeasureSpec = parentWidthMeasureSpec;
+    lastWidthUsed = widthUsed;
+    lastParentHeightMeasureSpec = parentHeightMeasureSpec;
+    lastHeightUsed = heightUsed;
+    return false;
   }
 
-  @Override public int getViewHorizontalDragRange(View child) {
-    return isDrawerView(child) ? child.getWidth() : 0;
+  /** Force the next layout pass to measure the drawer because it is about to become visible. */
+  private void invalidateMeasureCache() {
+    measured = false;
+    if (layoutDeferred) {
+      child.requestLayout();
+    }
   }
 
-  @Override public int clampViewPositionHorizontal(View child, int left, int dx) {
+  /**
+   * Stop any gesture or motion and move straight to the pinned position or, when unpinning, to
+   * closed. Listeners see the drawer go idle but are not told it opened or closed.
+   */
+  private void setPinned(boolean pinned) {
+    coordinator.cancelGesture();
+    if (propertySettling) {
+      finishPropertySettle();
+    }
+    stopSettle();
+    if (latencyTracer != null) {
+      latencyTracer.stop();
+    }
+    engine.setDragging(false);
+    engine.setPeeking(false);
+    nestedScrolling = false;
+    this.pinned = pinned;
+    // The last measurement was made in the other mode.
+    measured = false;
+    if (pinned) {
+      openPending = false;
+    } else {
+      dispatchOpenCancelled();
+    }
+
+    if (pinned) {
+      setDrawerViewOffset(1);
+      engine.markOpen();
+      coordinator.releaseScrim(this);
+      if (shadow != null) {
+        shadow.setVisible(false);
+      }
+      // Beside the content rather than over it, so nothing is hidden from accessibility.
+      accessibility.restoreAll();
+    } else {
+      setDrawerViewOffset(0);
+      engine.markClosed();
+      accessibility.update(false);
+    }
+    updateDrawerState(null);
+  }
+
+  /**
+   * Make room beside a pinned drawer with padding on the parent's side where the drawer is. Called
+   * while the parent measures its children, so any content it already measured is measured again
+   * against the new padding.
+   */
+  private void updatePinnedPadding(int padding, int parentWidthMeasureSpec,
+      int parentHeightMeasureSpec) {
+    if (setPinnedPadding(padding)) {
+      measureContent(parentWidthMeasureSpec, parentHeightMeasureSpec);
+    }
+  }
+
+  /** Returns false if the parent already had this padding. */
+  private boolean setPinnedPadding(int padding) {
+    int delta = padding - pinnedPadding;
+    if (delta == 0) {
+      return false;
+    }
+    pinnedPadding = padding;
     if (isLeft) {
-      return Math.max(-child.getWidth(), Math.min(left, 0));
+      parent.setPadding(parent.getPaddingLeft() + delta, parent.getPaddingTop(),
+          parent.getPaddingRight(), parent.getPaddingBottom());
     } else {
-      int width = parent.getWidth();
-      return Math.max(width - child.getWidth(), Math.min(left, width));
+      parent.setPadding(parent.getPaddingLeft(), parent.getPaddingTop(),
+          parent.getPaddingRight() + delta, parent.getPaddingBottom());
     }
+    return true;
   }
 
-  @Override public int clampViewPositionVertical(View child, int top, int dy) {
-    return child.getTop();
+  /**
+   * Measure the content with the specs {@link CoordinatorLayout}'s onMeasure gives it. Those are
+   * derived from the drawer's specs, which the parent only reduced by its insets if the drawer
+   * does not fit system windows. Content placed by a keyline, or which needs specs the drawer's
+   * cannot be turned back into, is left to another layout pass.
+   */
+  @SuppressWarnings("unchecked") // A view's behavior always accepts that view.
+  private void measureContent(int drawerWidthMeasureSpec, int drawerHeightMeasureSpec) {
+    // The parent only applies insets on API 21+ and only when it fits system windows itself.
+    boolean parentInsets = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+        && ViewCompat.getFitsSystemWindows(parent);
+    boolean drawerFits = ViewCompat.getFitsSystemWindows(child);
+    boolean layoutAgain = false;
+
+    for (int i = 0, count = parent.getChildCount(); i < count; i++) {
+      View view = parent.getChildAt(i);
+      if (view.getVisibility() == View.GONE || !isContentView(view)) {
+        continue;
+      }
+      CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams) view.getLayoutParams();
+      CoordinatorLayout.Behavior<View> behavior = lp.getBehavior();
+      if (behavior instanceof DrawerBehavior) {
+        continue; // Drawers lie over the content so the padding does not apply to them.
+      }
+
+      int widthMeasureSpec = drawerWidthMeasureSpec;
+      int heightMeasureSpec = drawerHeightMeasureSpec;
+      if (parentInsets && ViewCompat.getFitsSystemWindows(view) != drawerFits) {
+        if (!drawerFits) {
+          // The parent's own specs are the drawer's plus insets which never reached the drawer.
+          layoutAgain = true;
+          continue;
+        }
+        if (lastInsets != null) {
+          widthMeasureSpec = shrinkMeasureSpec(widthMeasureSpec,
+              lastInsets.getSystemWindowInsetLeft() + lastInsets.getSystemWindowInsetRight());
+          heightMeasureSpec = shrinkMeasureSpec(heightMeasureSpec,
+              lastInsets.getSystemWindowInsetTop() + lastInsets.getSystemWindowInsetBottom());
+        }
+      }
+      if (lp.keyline >= 0) {
+        // The parent's keylines are not visible to behaviors.
+        layoutAgain = true;
+        continue;
+      }
+
+      if (behavior == null || !behavior.onMeasureChild(parent, view, widthMeasureSpec, 0,
+          heightMeasureSpec, 0)) {
+        parent.onMeasureChild(view, widthMeasureSpec, 0, heightMeasureSpec, 0);
+      }
+    }
+
+    if (layoutAgain) {
+      // A layout requested while the parent is measuring is dropped once its layout completes.
+      parent.removeCallbacks(parentLayout);
+      ViewCompat.postOnAnimation(parent, parentLayout);
+    }
+  }
+
+  private static int shrinkMeasureSpec(int measureSpec, int by) {
+    return View.MeasureSpec.makeMeasureSpec(View.MeasureSpec.getSize(measureSpec) - by,
+        View.MeasureSpec.getMode(measureSpec));
   }
 
   boolean onLayoutChild() {
@@ -399,39 +923,36 @@ final class BehaviorDelegate extends ViewDragHelper.Callback {
     int childWidth = child.getMeasuredWidth();
     int childHeight = child.getMeasuredHeight();
 
-    int childLeft;
-    float newOffset;
-    if (isLeft) {
-      childLeft = -childWidth + (int) (childWidth * onScreen);
-      newOffset = (float) (childWidth + childLeft) / childWidth;
-    } else {
-      childLeft = width - (int) (childWidth * onScreen);
-      newOffset = (float) (width - childLeft) / childWidth;
+    // Pinned or not was decided when the drawer was measured.
+    if (!pinned) {
+      ensureDraggable();
     }
 
-    boolean changeOffset = newOffset != onScreen;
+    // A pinned drawer is fully open so this is its open position.
+    engine.setSize(width, childWidth);
+    int childLeft = engine.layoutLeft();
+    float newOffset = engine.offsetAt(childLeft);
+
+    boolean changeOffset = newOffset != engine.offset();
 
     CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams) child.getLayoutParams();
     int vgrav = lp.gravity & Gravity.VERTICAL_GRAVITY_MASK;
 
+    int childTop;
     switch (vgrav) {
       default:
       case Gravity.TOP: {
-        child.layout(childLeft, lp.topMargin, childLeft + childWidth,
-            lp.topMargin + childHeight);
+        childTop = lp.topMargin;
         break;
       }
 
       case Gravity.BOTTOM: {
-        child.layout(childLeft,
-            height - lp.bottomMargin - child.getMeasuredHeight(),
-            childLeft + childWidth,
-            height - lp.bottomMargin);
+        childTop = height - lp.bottomMargin - childHeight;
         break;
       }
 
       case Gravity.CENTER_VERTICAL: {
-        int childTop = (height - childHeight) / 2;
+        childTop = (height - childHeight) / 2;
 
         // Offset for margins. If things don't fit right because of
         // bad measurement before, oh well.
@@ -440,20 +961,42 @@ final class BehaviorDelegate extends ViewDragHelper.Callback {
         } else if (childTop + childHeight > height - lp.bottomMargin) {
           childTop = height - lp.bottomMargin - childHeight;
         }
-        child.layout(childLeft, childTop, childLeft + childWidth,
-            childTop + childHeight);
         break;
       }
     }
 
+    // A closed drawer whose measure was skipped keeps its pending layout until it is about to be
+    // shown. Don't lay it out again in place.
+    if (!layoutDeferred
+        || child.getLeft() != childLeft
+        || child.getTop() != childTop
+        || child.getRight() != childLeft + childWidth
+        || child.getBottom() != childTop + childHeight) {
+      child.layout(childLeft, childTop, childLeft + childWidth, childTop + childHeight);
+    }
+
     if (changeOffset) {
       setDrawerViewOffset(newOffset);
     }
 
+    float onScreen = engine.offset();
     int newVisibility = onScreen > 0 ? VISIBLE : INVISIBLE;
     if (child.getVisibility() != newVisibility) {
       child.setVisibility(newVisibility);
     }
+
+    if (!pinned) {
+      updateScrim(childLeft, onScreen);
+      if (shadow != null) {
+        shadow.setVisible(onScreen > 0);
+      }
+    }
+    if (restoredOpen) {
+      restoredOpen = false;
+      if (!pinned) {
+        accessibility.update(true);
+      }
+    }
     return true;
   }
 }
@@ -15,10 +15,12 @@
  */
 package com.jakewharton.behavior.drawer;
 
+import android.animation.TimeInterpolator;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.support.design.widget.CoordinatorLayout;
@@ -28,17 +30,83 @@ import android.view.View;
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 
 interface ContentScrimDrawer {
-  void setColor(int color);
-  void setBounds(int left, int top, int right, int bottom);
+  /**
+   * Update the scrim's bounds and its opacity relative to the fully-opened scrim color. Nothing
+   * is invalidated when neither changed, otherwise a single invalidation covers both the old and
+   * new bounds.
+   */
+  void update(int left, int top, int right, int bottom, float opacity);
   void setVisible(boolean gone);
 
+  /** Draws the scrim color once and follows the drawer as a {@link PropertyOverlay}. */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  @SuppressLint("ViewConstructor") // Created only programmatically.
+  final class Lollipop extends PropertyOverlay implements ContentScrimDrawer {
+    private final View parent;
+
+    Lollipop(CoordinatorLayout parent, View child, int scrimColor) {
+      super(parent.getContext());
+      this.parent = parent;
+      setBackgroundColor(scrimColor);
+      // Draw at the same level of the child.
+      parent.addView(this, parent.indexOfChild(child),
+          new LayoutParams(MATCH_PARENT, MATCH_PARENT));
+    }
+
+    @Override public void update(int left, int top, int right, int bottom, float opacity) {
+      setTranslationAndAlpha(translationFor(left, right), opacity);
+    }
+
+    /** Animate to the given bounds and opacity with view property animations. */
+    void animateTo(int left, int right, float opacity, long duration,
+        TimeInterpolator interpolator) {
+      animateTranslationAndAlpha(translationFor(left, right), opacity, duration, interpolator);
+    }
+
+    private int translationFor(int left, int right) {
+      // This view always fills the parent. Translate it so its inner edge follows the drawer.
+      // The parent's width is used since it is known before this view's first layout.
+      return left != 0 ? left : right - parent.getWidth();
+    }
+  }
+
   @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
   final class JellyBeanMr2 extends ColorDrawable implements ContentScrimDrawer {
     private final View parent;
+    private final int scrimColor;
     private boolean visible;
+    private boolean updating;
 
-    JellyBeanMr2(CoordinatorLayout parent) {
+    JellyBeanMr2(CoordinatorLayout parent, int scrimColor) {
       this.parent = parent;
+      this.scrimColor = scrimColor;
+    }
+
+    @Override public void update(int left, int top, int right, int bottom, float opacity) {
+      int baseAlpha = (scrimColor & 0xff000000) >>> 24;
+      int color = (int) (baseAlpha * opacity) << 24 | (scrimColor & 0xffffff);
+
+      Rect bounds = getBounds();
+      if (bounds.left == left
+          && bounds.top == top
+          && bounds.right == right
+          && bounds.bottom == bottom
+          && getColor() == color) {
+        return;
+      }
+      updating = true;
+      setBounds(left, top, right, bottom);
+      setColor(color);
+      updating = false;
+      // The overlay can only invalidate our current bounds. Any area the scrim vacated is now
+      // covered by the drawer which invalidates its own old and new position as it moves.
+      invalidateSelf();
+    }
+
+    @Override public void invalidateSelf() {
+      if (!updating) {
+        super.invalidateSelf();
+      }
     }
 
     @Override public void setVisible(boolean visible) {
@@ -53,17 +121,156 @@ interface ContentScrimDrawer {
     }
   }
 
+  /**
+   * Draws nothing itself. {@link CoordinatorLayout} draws the scrim beneath the drawer using the
+   * behavior's scrim color and opacity. On API 21+ the content is clipped to the scrim's bounds
+   * while the drawer is opaque and as tall as the parent, so the content hidden beneath the drawer
+   * is not drawn.
+   */
+  final class Coordinator implements ContentScrimDrawer {
+    private final CoordinatorLayout parent;
+    private View child;
+    private final int scrimColor;
+    private final Rect clipBounds = new Rect();
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private int color;
+    private float opacity;
+    private boolean clipped;
+
+    Coordinator(CoordinatorLayout parent, View child, int scrimColor) {
+      this.parent = parent;
+      this.child = child;
+      this.scrimColor = scrimColor;
+    }
+
+    /** Draw beneath {@code child} from now on, as when another drawer takes over the scrim. */
+    void setDrawer(View child) {
+      if (clipped && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+        unclipContent();
+      }
+      this.child = child;
+    }
+
+    int getColor() {
+      return color;
+    }
+
+    float getOpacity() {
+      return opacity;
+    }
+
+    @Override public void update(int left, int top, int right, int bottom, float opacity) {
+      int baseAlpha = (scrimColor & 0xff000000) >>> 24;
+      int color = (int) (baseAlpha * opacity) << 24 | (scrimColor & 0xffffff);
+
+      if (left == this.left
+          && top == this.top
+          && right == this.right
+          && bottom == this.bottom
+          && color == this.color) {
+        return;
+      }
+
+      // The parent draws the scrim across its whole area but only the uncovered part is seen.
+      int dirtyLeft = left;
+      int dirtyTop = top;
+      int dirtyRight = right;
+      int dirtyBottom = bottom;
+      if (this.left < this.right && this.top < this.bottom) {
+        dirtyLeft = Math.min(dirtyLeft, this.left);
+        dirtyTop = Math.min(dirtyTop, this.top);
+        dirtyRight = Math.max(dirtyRight, this.right);
+        dirtyBottom = Math.max(dirtyBottom, this.bottom);
+      }
+
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+      this.color = color;
+      this.opacity = opacity;
+      parent.invalidate(dirtyLeft, dirtyTop, dirtyRight, dirtyBottom);
+
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+        if (opacity > 0 && child.isOpaque() && coversParentHeight()) {
+          clipContent();
+        } else if (clipped) {
+          unclipContent();
+        }
+      }
+    }
+
+    /**
+     * True when the drawer spans the parent from top to bottom. Content above or below a shorter
+     * drawer is still visible so it must not be clipped away.
+     */
+    private boolean coversParentHeight() {
+      return child.getTop() <= 0 && child.getBottom() >= parent.getHeight();
+    }
+
+    /**
+     * Clip each content view to the scrim's bounds. Clip bounds are a render node property from
+     * API 21 and changing them does not re-record the content's display list.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void clipContent() {
+      int childCount = parent.getChildCount();
+      for (int i = 0; i < childCount; i++) {
+        View view = parent.getChildAt(i);
+        if (isContent(view)) {
+          int viewLeft = (int) view.getX();
+          int viewTop = (int) view.getY();
+          clipBounds.set(left - viewLeft, top - viewTop, right - viewLeft, bottom - viewTop);
+          view.setClipBounds(clipBounds);
+        }
+      }
+      clipped = true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void unclipContent() {
+      int childCount = parent.getChildCount();
+      for (int i = 0; i < childCount; i++) {
+        View view = parent.getChildAt(i);
+        if (isContent(view)) {
+          view.setClipBounds(null);
+        }
+      }
+      clipped = false;
+    }
+
+    private boolean isContent(View view) {
+      if (view == child || view instanceof ContentScrimDrawer || view instanceof EdgeShadow) {
+        return false;
+      }
+      // Other drawers are never beneath this one.
+      LayoutParams lp = (LayoutParams) view.getLayoutParams();
+      return !(lp.getBehavior() instanceof DrawerBehavior);
+    }
+
+    @Override public void setVisible(boolean visible) {
+      if (!visible && clipped && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+        unclipContent();
+      }
+    }
+  }
+
   @SuppressLint("ViewConstructor") // Created only programmatically.
   final class Base extends View implements ContentScrimDrawer {
     private final Paint colorPaint = new Paint();
+    private final int scrimColor;
     private int left;
     private int top;
     private int right;
     private int bottom;
     private boolean visible;
 
-    Base(CoordinatorLayout parent, View child) {
+    Base(CoordinatorLayout parent, View child, int scrimColor) {
       super(parent.getContext());
+      this.scrimColor = scrimColor;
       // Draw at the same level of the child.
       parent.addView(this, parent.indexOfChild(child),
           new LayoutParams(MATCH_PARENT, MATCH_PARENT));
@@ -73,17 +280,35 @@ interface ContentScrimDrawer {
       canvas.drawRect(left, top, right, bottom, colorPaint);
     }
 
-    @Override public void setColor(int color) {
-      colorPaint.setColor(color);
-      invalidate(left, top, right, bottom);
-    }
+    @Override public void update(int left, int top, int right, int bottom, float opacity) {
+      int baseAlpha = (scrimColor & 0xff000000) >>> 24;
+      int color = (int) (baseAlpha * opacity) << 24 | (scrimColor & 0xffffff);
 
-    @Override public void setBounds(int left, int top, int right, int bottom) {
+      if (left == this.left
+          && top == this.top
+          && right == this.right
+          && bottom == this.bottom
+          && color == colorPaint.getColor()) {
+        return;
+      }
+
+      int dirtyLeft = left;
+      int dirtyTop = top;
+      int dirtyRight = right;
+      int dirtyBottom = bottom;
+      if (this.left < this.right && this.top < this.bottom) {
+        dirtyLeft = Math.min(dirtyLeft, this.left);
+        dirtyTop = Math.min(dirtyTop, this.top);
+        dirtyRight = Math.max(dirtyRight, this.right);
+        dirtyBottom = Math.max(dirtyBottom, this.bottom);
+      }
+
+      colorPaint.setColor(color);
       this.left = left;
       this.top = top;
       this.right = right;
       this.bottom = bottom;
-      invalidate(left, top, right, bottom);
+      invalidate(dirtyLeft, dirtyTop, dirtyRight, dirtyBottom);
     }
 
     @Override public void setVisible(boolean visible) {
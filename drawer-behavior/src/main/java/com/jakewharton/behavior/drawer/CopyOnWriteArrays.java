@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import java.lang.reflect.Array;
+
+/**
+ * Updates for arrays which are replaced rather than mutated, so they can be iterated without a
+ * copy even when an element is added or removed during the iteration.
+ */
+final class CopyOnWriteArrays {
+  private CopyOnWriteArrays() {
+    throw new AssertionError("No instances.");
+  }
+
+  /** Returns a copy of {@code array} with {@code element} appended. */
+  static <T> T[] append(T[] array, T element) {
+    int length = array.length;
+    @SuppressWarnings("unchecked") // Same component type as the input.
+    T[] newArray = (T[]) Array.newInstance(array.getClass().getComponentType(), length + 1);
+    System.arraycopy(array, 0, newArray, 0, length);
+    newArray[length] = element;
+    return newArray;
+  }
+
+  /**
+   * Returns a copy of {@code array} without the first occurrence of {@code element}, {@code empty}
+   * if that leaves nothing, or {@code array} itself if it does not contain {@code element}.
+   */
+  static <T> T[] remove(T[] array, T element, T[] empty) {
+    int index = indexOf(array, element);
+    if (index == -1) {
+      return array;
+    }
+    int count = array.length;
+    if (count == 1) {
+      return empty;
+    }
+    @SuppressWarnings("unchecked") // Same component type as the input.
+    T[] newArray = (T[]) Array.newInstance(array.getClass().getComponentType(), count - 1);
+    System.arraycopy(array, 0, newArray, 0, index);
+    System.arraycopy(array, index + 1, newArray, index, count - index - 1);
+    return newArray;
+  }
+
+  /** The index of the first element identical to {@code element}, or -1. */
+  static int indexOf(Object[] array, Object element) {
+    for (int i = 0, count = array.length; i < count; i++) {
+      if (array[i] == element) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
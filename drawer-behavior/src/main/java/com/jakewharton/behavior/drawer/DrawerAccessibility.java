@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * Keeps whichever of a drawer and its content is covered out of the accessibility tree, and
+ * announces the drawer opening and closing.
+ */
+final class DrawerAccessibility {
+  /** Matches the interval at which the framework itself batches accessibility events. */
+  private static final int WINDOW_STATE_DELAY = 100; // ms
+
+  private final CoordinatorLayout parent;
+  private final View drawer;
+  private boolean open;
+
+  private final Runnable windowStateChanged = new Runnable() {
+    @Override public void run() {
+      sendWindowStateChanged();
+    }
+  };
+
+  DrawerAccessibility(CoordinatorLayout parent, View drawer) {
+    this.parent = parent;
+    this.drawer = drawer;
+  }
+
+  /**
+   * Hide the content from accessibility while the drawer is open and the drawer while it is
+   * closed. Only views whose importance actually changes are touched, and each gets back the
+   * value it had before it was hidden.
+   */
+  void update(boolean isDrawerOpen) {
+    int childCount = parent.getChildCount();
+    for (int i = 0; i < childCount; i++) {
+      View view = parent.getChildAt(i);
+      if (isOtherDrawer(view)) {
+        // Each drawer manages its own importance. Only one is ever open.
+        continue;
+      }
+      if (isDrawerOpen == (view != drawer)) {
+        hide(view);
+      } else {
+        restore(view);
+      }
+    }
+  }
+
+  /** Give back every view its own importance, as when the drawer sits beside the content. */
+  void restoreAll() {
+    int childCount = parent.getChildCount();
+    for (int i = 0; i < childCount; i++) {
+      View view = parent.getChildAt(i);
+      if (!isOtherDrawer(view)) {
+        restore(view);
+      }
+    }
+  }
+
+  /**
+   * Announce the drawer's state once it stops changing, so an open quickly followed by a close
+   * sends one event rather than two.
+   */
+  void announce(boolean open) {
+    this.open = open;
+    parent.removeCallbacks(windowStateChanged);
+    parent.postDelayed(windowStateChanged, WINDOW_STATE_DELAY);
+  }
+
+  /** Drop a pending announcement. */
+  void cancel() {
+    parent.removeCallbacks(windowStateChanged);
+  }
+
+  private void sendWindowStateChanged() {
+    // Only send WINDOW_STATE_CHANGE if the host has window focus. This
+    // may change if support for multiple foreground windows (e.g. IME)
+    // improves.
+    if (!parent.hasWindowFocus()) {
+      return;
+    }
+    if (open) {
+      parent.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+    } else {
+      final View rootView = parent.getRootView();
+      if (rootView != null) {
+        rootView.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+      }
+    }
+  }
+
+  private boolean isOtherDrawer(View view) {
+    return view != drawer
+        && ((CoordinatorLayout.LayoutParams) view.getLayoutParams()).getBehavior()
+        instanceof DrawerBehavior;
+  }
+
+  private static void hide(View view) {
+    int importance = ViewCompat.getImportantForAccessibility(view);
+    if (importance != ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS) {
+      // Importance values are small enough that boxing them does not allocate.
+      view.setTag(R.id.behavior_drawer_importance, importance);
+      ViewCompat.setImportantForAccessibility(view,
+          ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+    }
+  }
+
+  private static void restore(View view) {
+    Integer importance = (Integer) view.getTag(R.id.behavior_drawer_importance);
+    if (importance != null) {
+      view.setTag(R.id.behavior_drawer_importance, null);
+      ViewCompat.setImportantForAccessibility(view, importance);
+    }
+  }
+}
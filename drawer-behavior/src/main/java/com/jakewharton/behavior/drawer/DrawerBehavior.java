@@ -15,18 +15,123 @@
  */
 package com.jakewharton.behavior.drawer;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.ColorInt;
 import android.support.annotation.Keep;
+import android.support.annotation.Nullable;
 import android.support.design.widget.CoordinatorLayout;
-import android.support.v4.util.SimpleArrayMap;
 import android.support.v4.view.GravityCompat;
+import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.WindowInsetsCompat;
+import android.support.v4.widget.ViewDragHelper;
 import android.util.AttributeSet;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewStub;
+import java.lang.ref.WeakReference;
 
 public final class DrawerBehavior extends CoordinatorLayout.Behavior<View> {
+  /** Render the drawer into a hardware layer while it is dragged or settling. */
+  public static final int HARDWARE_LAYER_DRAWER = 0x1;
+  /** Render the content views into hardware layers while the drawer is dragged or settling. */
+  public static final int HARDWARE_LAYER_CONTENT = 0x2;
+
+  /** Inflate a {@link ViewStub} drawer when a touch lands on its edge. */
+  public static final int INFLATE_ON_EDGE_TOUCH = 0;
+  /** Inflate a {@link ViewStub} drawer the first time the main thread goes idle. */
+  public static final int INFLATE_ON_IDLE = 1;
+
+  private static final int EDGE_SIZE = 20; // dp, matches ViewDragHelper
+
+  /** The drawer is at rest. */
+  public static final int STATE_IDLE = ViewDragHelper.STATE_IDLE;
+  /** The drawer is being moved by the user. */
+  public static final int STATE_DRAGGING = ViewDragHelper.STATE_DRAGGING;
+  /** The drawer is animating to its open or closed position. */
+  public static final int STATE_SETTLING = ViewDragHelper.STATE_SETTLING;
+
+  /** Receives changes to a drawer's position and state. */
+  public interface DrawerListener {
+    /**
+     * Called when the drawer's position changes, at most once per frame with the latest offset.
+     *
+     * @param slideOffset How open the drawer is, from 0 (closed) to 1 (open).
+     */
+    void onDrawerSlide(View drawerView, float slideOffset);
+
+    /** Called when the drawer has settled in a completely open state. */
+    void onDrawerOpened(View drawerView);
+
+    /** Called when the drawer has settled in a completely closed state. */
+    void onDrawerClosed(View drawerView);
+
+    /**
+     * Called when the drawer's motion state changes.
+     *
+     * @param newState One of {@link #STATE_IDLE}, {@link #STATE_DRAGGING}, or
+     * {@link #STATE_SETTLING}.
+     */
+    void onDrawerStateChanged(int newState);
+  }
+
+  /** Receives timing for the frames in which a drawer is dragged or settling. */
+  public interface FrameMetricsListener {
+    /** Called after each drag or settle frame with the time spent repositioning the drawer. */
+    void onDrawerFrame(View drawerView, long positionNanos);
+
+    /**
+     * Called when the drawer finishes settling open or closed. {@code lateFrames} counts frames
+     * which arrived more than one and a half vsync intervals after the previous frame.
+     */
+    void onDrawerSettled(View drawerView, int frames, long durationNanos, int lateFrames);
+  }
+
+  /**
+   * Receives early notice that a gesture may open a drawer, so its content can start binding
+   * while the gesture is still under way.
+   */
+  public interface PendingOpenListener {
+    /**
+     * Called when a touch lands on the drawer's edge or starts dragging it out, before any of
+     * the drawer is shown. Called at most once per gesture.
+     */
+    void onDrawerOpenPending(View drawerView);
+
+    /**
+     * Called when a gesture reported to {@link #onDrawerOpenPending} ends without opening the
+     * drawer. A gesture which opens it is instead followed by
+     * {@link DrawerListener#onDrawerOpened}.
+     */
+    void onDrawerOpenCancelled(View drawerView);
+  }
+
+  /** Returns the {@link DrawerBehavior} associated with {@code view}. */
+  public static DrawerBehavior from(View view) {
+    ViewGroup.LayoutParams params = view.getLayoutParams();
+    if (!(params instanceof CoordinatorLayout.LayoutParams)) {
+      throw new IllegalArgumentException("The view is not a child of CoordinatorLayout.");
+    }
+    CoordinatorLayout.Behavior<?> behavior =
+        ((CoordinatorLayout.LayoutParams) params).getBehavior();
+    if (!(behavior instanceof DrawerBehavior)) {
+      throw new IllegalArgumentException("The view is not associated with DrawerBehavior.");
+    }
+    return (DrawerBehavior) behavior;
+  }
+
+  private static final DrawerListener[] NO_LISTENERS = new DrawerListener[0];
+  private static final int DEFAULT_SHADOW_COLOR = 0x33000000;
+
   private static void validateGravity(int gravity) {
     if (gravity != Gravity.LEFT
         && gravity != Gravity.RIGHT
@@ -36,8 +141,28 @@ public final class DrawerBehavior extends CoordinatorLayout.Behavior<View> {
     }
   }
 
-  private final SimpleArrayMap<View, BehaviorDelegate> delegates = new SimpleArrayMap<>();
-  private final int gravity;
+  final int gravity;
+
+  int hardwareLayers;
+  boolean propertySettle;
+  boolean coalesceDrags;
+  boolean springSettle;
+  boolean coordinatorScrim;
+  int shadowWidth;
+  int shadowColor = DEFAULT_SHADOW_COLOR;
+  boolean latencyTracing;
+  private boolean pinned;
+  private int pinnedMinWidth;
+  final LatencyHistogram latencyHistogram = new LatencyHistogram();
+  private int inflateOn = INFLATE_ON_EDGE_TOUCH;
+  FrameMetricsListener frameMetricsListener;
+  /** Times frames for {@link #frameMetricsListener}. Replaced by tests. */
+  FrameMetrics.Clock frameMetricsClock = FrameMetrics.SYSTEM_CLOCK;
+  PendingOpenListener pendingOpenListener;
+  /** Updated with {@link CopyOnWriteArrays} so dispatch can iterate it without a copy. */
+  DrawerListener[] drawerListeners = NO_LISTENERS;
+  /** The most recently created delegate, checked before the slower view tag lookup. */
+  private WeakReference<BehaviorDelegate> lastDelegate;
 
   @SuppressWarnings("unused") // Public API for programmatic instantiation.
   public DrawerBehavior(int gravity) {
@@ -51,33 +176,508 @@ public final class DrawerBehavior extends CoordinatorLayout.Behavior<View> {
     TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.DrawerBehavior);
     int gravity =
         a.getInteger(R.styleable.DrawerBehavior_android_layout_gravity, GravityCompat.END);
+    hardwareLayers = a.getInt(R.styleable.DrawerBehavior_behavior_hardwareLayers, 0);
+    propertySettle = a.getBoolean(R.styleable.DrawerBehavior_behavior_propertySettle, false);
+    coalesceDrags = a.getBoolean(R.styleable.DrawerBehavior_behavior_coalesceDrags, false);
+    springSettle = a.getBoolean(R.styleable.DrawerBehavior_behavior_springSettle, false);
+    coordinatorScrim =
+        a.getBoolean(R.styleable.DrawerBehavior_behavior_coordinatorScrim, false);
+    shadowWidth = a.getDimensionPixelSize(R.styleable.DrawerBehavior_behavior_shadowWidth, 0);
+    pinnedMinWidth =
+        a.getDimensionPixelSize(R.styleable.DrawerBehavior_behavior_pinnedMinWidth, 0);
+    shadowColor = a.getColor(R.styleable.DrawerBehavior_behavior_shadowColor, DEFAULT_SHADOW_COLOR);
+    inflateOn = a.getInt(R.styleable.DrawerBehavior_behavior_inflateOn, INFLATE_ON_EDGE_TOUCH);
     a.recycle();
 
     validateGravity(gravity);
     this.gravity = gravity;
   }
 
+  /**
+   * Set which views are promoted to hardware layers for the duration of a drag or settle. The
+   * original layer types are restored when the drawer comes to rest.
+   *
+   * @param hardwareLayers A combination of {@link #HARDWARE_LAYER_DRAWER} and
+   * {@link #HARDWARE_LAYER_CONTENT}, or 0 to disable.
+   */
+  public void setHardwareLayers(int hardwareLayers) {
+    this.hardwareLayers = hardwareLayers;
+  }
+
+  /**
+   * Set whether the drawer settles open or closed after a drag using view property animations.
+   * This only cuts the work this behavior does per frame: each frame changes the translation and
+   * alpha of the drawer and scrim without running the behavior or re-recording a display list.
+   * The animations still run on the main thread, so a busy main thread stalls them just the same.
+   * Only honored on API 21+ in hardware accelerated windows.
+   * <p>
+   * Intermediate positions are not tracked, so touching the parent while the drawer is settling
+   * this way moves it straight to where it was headed.
+   */
+  public void setPropertySettleEnabled(boolean enabled) {
+    propertySettle = enabled;
+  }
+
+  /**
+   * Set whether move events during a drag are batched and applied once per frame. All batched
+   * samples still feed the fling velocity but only the latest moves the drawer, so the work per
+   * frame does not grow with the touch sampling rate. Only honored on API 16+.
+   */
+  public void setCoalesceDragsEnabled(boolean enabled) {
+    coalesceDrags = enabled;
+  }
+
+  /**
+   * Set whether the drawer settles with a critically damped spring rather than a fixed-duration
+   * curve. A settle which is redirected, such as a peek turned into a close, keeps its velocity
+   * instead of starting over. The settle ends once the drawer is within a pixel of its target.
+   * <p>
+   * Spring settles take precedence over
+   * {@linkplain #setPropertySettleEnabled property animation settling}.
+   */
+  public void setSpringSettleEnabled(boolean enabled) {
+    springSettle = enabled;
+  }
+
+  /**
+   * Set whether the scrim is drawn by {@link CoordinatorLayout} through
+   * {@link #getScrimColor} and {@link #getScrimOpacity} instead of by an extra view or overlay
+   * drawable. On API 21+ content is also clipped to the area an opaque drawer leaves uncovered.
+   * Drawers in the same parent share one scrim, whose kind is set by the first of them to be laid
+   * out.
+   * <p>
+   * A scrim drawn this way cannot be animated with view properties so
+   * {@linkplain #setPropertySettleEnabled property animation settling} is not used.
+   */
+  public void setCoordinatorScrimEnabled(boolean enabled) {
+    coordinatorScrim = enabled;
+  }
+
+  /**
+   * Set the shadow the drawer's inner edge casts on the content. It is rendered once and then
+   * only moved and faded as the drawer does. Only honored on API 11+ and for drawers which have
+   * not yet been laid out.
+   *
+   * @param width Width of the shadow in pixels, or 0 for no shadow.
+   * @param color Color of the shadow where it is darkest, next to the drawer.
+   */
+  public void setEdgeShadow(int width, @ColorInt int color) {
+    shadowWidth = width;
+    shadowColor = color;
+  }
+
+  /**
+   * Set when a drawer declared as a {@link ViewStub} is inflated. The stub stands in for the
+   * drawer until then so that its content is not inflated, measured, or laid out at startup.
+   * The stub's layout params, and with them this behavior, carry over to the inflated view.
+   *
+   * @param inflateOn Either {@link #INFLATE_ON_EDGE_TOUCH} or {@link #INFLATE_ON_IDLE}.
+   */
+  public void setInflateOn(int inflateOn) {
+    if (inflateOn != INFLATE_ON_EDGE_TOUCH && inflateOn != INFLATE_ON_IDLE) {
+      throw new IllegalArgumentException("Unknown inflation trigger: " + inflateOn);
+    }
+    this.inflateOn = inflateOn;
+  }
+
+  /** Add a listener which is notified of drawer motion and open/close events. */
+  public void addDrawerListener(DrawerListener listener) {
+    if (listener == null) {
+      throw new NullPointerException("listener == null");
+    }
+    drawerListeners = CopyOnWriteArrays.append(drawerListeners, listener);
+  }
+
+  /** Remove a listener previously added with {@link #addDrawerListener}. */
+  public void removeDrawerListener(DrawerListener listener) {
+    drawerListeners = CopyOnWriteArrays.remove(drawerListeners, listener, NO_LISTENERS);
+  }
+
+  /**
+   * Set a listener which receives per-frame timing while drawers using this behavior are dragged
+   * or settling. No timing is recorded while the listener is null.
+   */
+  public void setFrameMetricsListener(@Nullable FrameMetricsListener listener) {
+    frameMetricsListener = listener;
+  }
+
+  /**
+   * Set whether the drawer is pinned: laid out open beside the content, which the parent's
+   * padding makes room for, rather than over it. A pinned drawer has no scrim, does not
+   * intercept touches, and cannot be dragged. The parent is laid out again to apply it.
+   *
+   * @see #setPinnedMinWidth(int)
+   */
+  public void setPinned(boolean pinned) {
+    if (this.pinned != pinned) {
+      this.pinned = pinned;
+      requestLayout();
+    }
+  }
+
+  /**
+   * Pin the drawer whenever its parent is at least {@code minWidth} pixels wide, or pass 0 to
+   * only pin with {@link #setPinned(boolean)}. The parent is laid out again to apply it.
+   */
+  public void setPinnedMinWidth(int minWidth) {
+    if (pinnedMinWidth != minWidth) {
+      pinnedMinWidth = minWidth;
+      requestLayout();
+    }
+  }
+
+  boolean isPinned(int parentWidth) {
+    return pinned || pinnedMinWidth > 0 && parentWidth >= pinnedMinWidth;
+  }
+
+  /**
+   * Set whether drags measure the time from each touch event to the parent's next draw which
+   * shows the drawer's resulting position. Results accumulate in
+   * {@link #getLatencyHistogram()} and each measured draw is marked in systrace with a section
+   * named for its latency bucket. Only honored on API 16+, and traced on API 18+.
+   */
+  public void setLatencyTracingEnabled(boolean enabled) {
+    latencyTracing = enabled;
+  }
+
+  /** Latencies measured while {@linkplain #setLatencyTracingEnabled tracing} is enabled. */
+  public LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
+  }
+
+  /** Set a listener which is told when a drawer using this behavior may be about to open. */
+  public void setPendingOpenListener(@Nullable PendingOpenListener listener) {
+    pendingOpenListener = listener;
+  }
+
   private BehaviorDelegate delegate(CoordinatorLayout parent, View child) {
-    BehaviorDelegate delegate = delegates.get(child);
+    BehaviorDelegate delegate = existingDelegate(child);
     if (delegate == null) {
-      delegate = new BehaviorDelegate(parent, child, gravity);
-      delegates.put(child, delegate);
+      delegate = new BehaviorDelegate(parent, child, this);
+      child.setTag(R.id.behavior_drawer_delegate, delegate);
+      lastDelegate = new WeakReference<BehaviorDelegate>(delegate);
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+        child.addOnAttachStateChangeListener(new DetachListener());
+      }
     }
     return delegate;
   }
 
+  /** Lay out the drawer most recently shown with this behavior again, if it is still around. */
+  private void requestLayout() {
+    BehaviorDelegate delegate = lastDelegate != null ? lastDelegate.get() : null;
+    if (delegate != null) {
+      delegate.child.requestLayout();
+    }
+  }
+
+  /** Returns the delegate already created for {@code child}, or null. */
+  @Nullable private BehaviorDelegate existingDelegate(View child) {
+    // Delegates hang off their drawer view rather than this behavior so that a behavior which
+    // outlives its layout never retains the view hierarchy. The tag lookup is a binary search of
+    // the view's keyed tags, so the usual case of one drawer per behavior is answered by a weak
+    // reference which does not retain it either.
+    WeakReference<BehaviorDelegate> lastDelegate = this.lastDelegate;
+    if (lastDelegate != null) {
+      BehaviorDelegate delegate = lastDelegate.get();
+      if (delegate != null && delegate.child == child) {
+        return delegate;
+      }
+    }
+    return (BehaviorDelegate) child.getTag(R.id.behavior_drawer_delegate);
+  }
+
+  private boolean isEdgeTouch(CoordinatorLayout parent, MotionEvent ev) {
+    int absGravity =
+        GravityCompat.getAbsoluteGravity(gravity, ViewCompat.getLayoutDirection(parent));
+    float edgeSize = EDGE_SIZE * parent.getResources().getDisplayMetrics().density;
+    float x = ev.getX();
+    return absGravity == Gravity.LEFT ? x < edgeSize : x > parent.getWidth() - edgeSize;
+  }
+
+  private static void inflateWhenIdle(ViewStub stub) {
+    if (stub.getTag(R.id.behavior_drawer_idle_inflater) == null) {
+      IdleInflater inflater = new IdleInflater(stub);
+      stub.setTag(R.id.behavior_drawer_idle_inflater, inflater);
+      Looper.myQueue().addIdleHandler(inflater);
+    }
+  }
+
+  @Override
+  public boolean onMeasureChild(CoordinatorLayout parent, View child, int parentWidthMeasureSpec,
+      int widthUsed, int parentHeightMeasureSpec, int heightUsed) {
+    if (child instanceof ViewStub) {
+      return false;
+    }
+    if (child.getVisibility() == View.GONE) {
+      BehaviorDelegate delegate = existingDelegate(child);
+      if (delegate != null) {
+        delegate.onMeasureGone(parentWidthMeasureSpec, parentHeightMeasureSpec);
+      }
+      return false;
+    }
+    return delegate(parent, child).onMeasureChild(parentWidthMeasureSpec, widthUsed,
+        parentHeightMeasureSpec, heightUsed);
+  }
+
+  @Override public WindowInsetsCompat onApplyWindowInsets(CoordinatorLayout parent, View child,
+      WindowInsetsCompat insets) {
+    if (!(child instanceof ViewStub)) {
+      delegate(parent, child).onApplyWindowInsets(insets);
+    }
+    return insets;
+  }
+
   @Override
   public boolean onLayoutChild(CoordinatorLayout parent, View child, int layoutDirection) {
+    if (child instanceof ViewStub) {
+      // A pinned drawer is always shown so it can't wait for an edge touch.
+      if (inflateOn == INFLATE_ON_IDLE || isPinned(parent.getMeasuredWidth())) {
+        inflateWhenIdle((ViewStub) child);
+      }
+      return true;
+    }
     return child.getVisibility() == View.GONE //
         || delegate(parent, child).onLayoutChild();
   }
 
   @Override
   public boolean onInterceptTouchEvent(CoordinatorLayout parent, View child, MotionEvent ev) {
+    if (child instanceof ViewStub) {
+      if (MotionEventCompat.getActionMasked(ev) != MotionEvent.ACTION_DOWN
+          || !isEdgeTouch(parent, ev)) {
+        return false;
+      }
+      // The inflated drawer takes the stub's layout params, and with them this behavior. Hand it
+      // the down event so the edge touch can still peek and drag.
+      child = ((ViewStub) child).inflate();
+    }
     return delegate(parent, child).onInterceptTouchEvent(ev);
   }
 
   @Override public boolean onTouchEvent(CoordinatorLayout parent, View child, MotionEvent ev) {
-    return delegate(parent, child).onTouchEvent(ev);
+    return !(child instanceof ViewStub) && delegate(parent, child).onTouchEvent(ev);
+  }
+
+  @Override
+  public boolean onStartNestedScroll(CoordinatorLayout parent, View child, View directTargetChild,
+      View target, int nestedScrollAxes) {
+    return !(child instanceof ViewStub)
+        && delegate(parent, child).onStartNestedScroll(directTargetChild, nestedScrollAxes);
+  }
+
+  @Override
+  public void onNestedPreScroll(CoordinatorLayout parent, View child, View target, int dx, int dy,
+      int[] consumed) {
+    if (!(child instanceof ViewStub)) {
+      delegate(parent, child).onNestedPreScroll(dx, consumed);
+    }
+  }
+
+  @Override
+  public void onNestedScroll(CoordinatorLayout parent, View child, View target, int dxConsumed,
+      int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
+    if (!(child instanceof ViewStub)) {
+      delegate(parent, child).onNestedScroll(dxUnconsumed);
+    }
+  }
+
+  @Override
+  public boolean onNestedPreFling(CoordinatorLayout parent, View child, View target,
+      float velocityX, float velocityY) {
+    return !(child instanceof ViewStub) && delegate(parent, child).onNestedPreFling(velocityX);
+  }
+
+  @Override public int getScrimColor(CoordinatorLayout parent, View child) {
+    // Called while drawing so only consult a delegate which already exists.
+    BehaviorDelegate delegate = existingDelegate(child);
+    return delegate != null ? delegate.getScrimColor() : super.getScrimColor(parent, child);
+  }
+
+  @Override public float getScrimOpacity(CoordinatorLayout parent, View child) {
+    BehaviorDelegate delegate = existingDelegate(child);
+    return delegate != null ? delegate.getScrimOpacity() : 0;
+  }
+
+  @Override public void onStopNestedScroll(CoordinatorLayout parent, View child, View target) {
+    if (!(child instanceof ViewStub)) {
+      delegate(parent, child).onStopNestedScroll();
+    }
+  }
+
+  @Override public Parcelable onSaveInstanceState(CoordinatorLayout parent, View child) {
+    Parcelable superState = super.onSaveInstanceState(parent, child);
+    if (child instanceof ViewStub) {
+      return superState;
+    }
+    // A pinned drawer is open only because of the parent's width, which may differ on restore.
+    BehaviorDelegate delegate = delegate(parent, child);
+    return new SavedState(superState, delegate.isOpen() && !delegate.isPinned());
+  }
+
+  @Override
+  public void onRestoreInstanceState(CoordinatorLayout parent, View child, Parcelable state) {
+    if (!(state instanceof SavedState)) {
+      super.onRestoreInstanceState(parent, child, state);
+      return;
+    }
+    SavedState savedState = (SavedState) state;
+    super.onRestoreInstanceState(parent, child, savedState.getSuperState());
+    if (savedState.open && !(child instanceof ViewStub)) {
+      delegate(parent, child).restoreOpen();
+    }
+  }
+
+  /**
+   * Counts of touch-to-draw latencies in millisecond buckets. Read and reset it on the main
+   * thread.
+   */
+  public static final class LatencyHistogram {
+    /** Inclusive upper bound of each bucket but the last, which is unbounded. */
+    private static final int[] BUCKET_BOUNDS = { 8, 16, 24, 32, 48, 64, 100 }; // ms
+    /** Precomputed so tracing a draw does not build a string. */
+    static final String[] TRACE_LABELS = new String[BUCKET_BOUNDS.length + 1];
+    static {
+      for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+        TRACE_LABELS[i] = "DrawerBehavior latency <=" + BUCKET_BOUNDS[i] + "ms";
+      }
+      TRACE_LABELS[BUCKET_BOUNDS.length] =
+          "DrawerBehavior latency >" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "ms";
+    }
+
+    private final int[] counts = new int[BUCKET_BOUNDS.length + 1];
+    private int count;
+    private long total;
+    private long max;
+
+    LatencyHistogram() {
+    }
+
+    /** Returns the bucket {@code latency} was counted in. */
+    int record(long latency) {
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[bucket]) {
+        bucket++;
+      }
+      counts[bucket]++;
+      count++;
+      total += latency;
+      max = Math.max(max, latency);
+      return bucket;
+    }
+
+    public int getBucketCount() {
+      return counts.length;
+    }
+
+    /**
+     * The largest latency in milliseconds counted in {@code bucket}, or
+     * {@link Integer#MAX_VALUE} for the last bucket.
+     */
+    public int getBucketUpperBound(int bucket) {
+      return bucket < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[bucket] : Integer.MAX_VALUE;
+    }
+
+    /** The number of latencies counted in {@code bucket}. */
+    public int getCount(int bucket) {
+      return counts[bucket];
+    }
+
+    /** The number of latencies counted in all buckets. */
+    public int getCount() {
+      return count;
+    }
+
+    /** The mean latency in milliseconds, or 0 when nothing has been counted. */
+    public long getMean() {
+      return count != 0 ? total / count : 0;
+    }
+
+    /** The largest latency in milliseconds. */
+    public long getMax() {
+      return max;
+    }
+
+    public void reset() {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = 0;
+      }
+      count = 0;
+      total = 0;
+      max = 0;
+    }
+
+    @Override public String toString() {
+      StringBuilder builder = new StringBuilder("LatencyHistogram{");
+      for (int i = 0; i < counts.length; i++) {
+        builder.append(i < BUCKET_BOUNDS.length ? "<=" : ">")
+            .append(BUCKET_BOUNDS[Math.min(i, BUCKET_BOUNDS.length - 1)])
+            .append("ms=")
+            .append(counts[i])
+            .append(", ");
+      }
+      return builder.append("mean=")
+          .append(getMean())
+          .append("ms, max=")
+          .append(max)
+          .append("ms}")
+          .toString();
+    }
+  }
+
+  static final class SavedState extends View.BaseSavedState {
+    final boolean open;
+
+    SavedState(Parcel source) {
+      super(source);
+      open = source.readInt() != 0;
+    }
+
+    SavedState(Parcelable superState, boolean open) {
+      super(superState);
+      this.open = open;
+    }
+
+    @Override public void writeToParcel(Parcel out, int flags) {
+      super.writeToParcel(out, flags);
+      out.writeInt(open ? 1 : 0);
+    }
+
+    public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+      @Override public SavedState createFromParcel(Parcel source) {
+        return new SavedState(source);
+      }
+
+      @Override public SavedState[] newArray(int size) {
+        return new SavedState[size];
+      }
+    };
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+  private static final class DetachListener implements View.OnAttachStateChangeListener {
+    @Override public void onViewAttachedToWindow(View view) {
+    }
+
+    @Override public void onViewDetachedFromWindow(View view) {
+      BehaviorDelegate delegate = (BehaviorDelegate) view.getTag(R.id.behavior_drawer_delegate);
+      delegate.onDetachedFromWindow();
+    }
+  }
+
+  private static final class IdleInflater implements MessageQueue.IdleHandler {
+    private final ViewStub stub;
+
+    IdleInflater(ViewStub stub) {
+      this.stub = stub;
+    }
+
+    @Override public boolean queueIdle() {
+      // The stub is detached from its parent once inflated by an edge touch.
+      if (stub.getParent() != null) {
+        stub.inflate();
+      }
+      return false;
+    }
   }
 }
@@ -0,0 +1,678 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.widget.ViewDragHelper;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Everything the drawers of one {@link CoordinatorLayout} share: a single drag helper tracking
+ * both edges, a single scrim, and the touch gesture itself. Only one drawer may be off its closed
+ * position at a time.
+ * <p>
+ * The parent offers each touch event to every drawer's behavior. Only the first offer is handled
+ * and the others get the same result, so the work per event does not grow with the number of
+ * drawers.
+ */
+final class DrawerCoordinator extends ViewDragHelper.Callback {
+  static final int MIN_FLING_VELOCITY = 400; // dips per second
+  private static final int PEEK_DELAY = 160; // ms
+
+  /** Returns the coordinator for {@code parent}, creating it on first use. */
+  static DrawerCoordinator get(CoordinatorLayout parent) {
+    DrawerCoordinator coordinator =
+        (DrawerCoordinator) parent.getTag(R.id.behavior_drawer_coordinator);
+    if (coordinator == null) {
+      coordinator = new DrawerCoordinator(parent);
+      parent.setTag(R.id.behavior_drawer_coordinator, coordinator);
+    }
+    return coordinator;
+  }
+
+  private static final BehaviorDelegate[] NO_DELEGATES = new BehaviorDelegate[0];
+
+  private final CoordinatorLayout parent;
+  /** Updated with {@link CopyOnWriteArrays} so touch handling can iterate it without a copy. */
+  private BehaviorDelegate[] delegates = NO_DELEGATES;
+  // Created on first need, which is never while every drawer is pinned.
+  private ViewDragHelper dragger;
+  private ContentScrimDrawer scrimDrawer;
+  private BehaviorDelegate scrimOwner;
+
+  private float initialMotionX;
+  private float initialMotionY;
+  private boolean childrenCanceledTouch;
+  private boolean ignoringGesture;
+  private boolean nestedScrolling;
+  private BehaviorDelegate captured;
+  private BehaviorDelegate peekTarget;
+  private MotionEvent cancelEvent;
+  private MotionEvent pendingMove;
+  private MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[0];
+
+  // The last event handled and through which entry point, so repeat offers can be recognized.
+  private MotionEvent lastEvent;
+  private long lastEventTime;
+  private int lastAction;
+  private boolean lastIntercept;
+  private boolean lastResult;
+  /** The down time of the gesture under way, or -1 once it has ended. */
+  private long gestureDownTime = -1;
+
+  private final Runnable peekRunnable = new Runnable() {
+    @Override public void run() {
+      if (peekTarget.peek(dragger.getEdgeSize())) {
+        cancelChildViewTouch();
+      }
+    }
+  };
+  private final Runnable flushMove = new Runnable() {
+    @Override public void run() {
+      flushPendingMove();
+      for (BehaviorDelegate delegate : delegates) {
+        delegate.dispatchPendingSlide();
+      }
+    }
+  };
+
+  private DrawerCoordinator(CoordinatorLayout parent) {
+    this.parent = parent;
+  }
+
+  void add(BehaviorDelegate delegate) {
+    if (CopyOnWriteArrays.indexOf(delegates, delegate) != -1) {
+      return;
+    }
+    delegates = CopyOnWriteArrays.append(delegates, delegate);
+    // A drawer inflated from a stub mid-dispatch must still see the event which inflated it.
+    lastEvent = null;
+  }
+
+  void remove(BehaviorDelegate delegate) {
+    delegates = CopyOnWriteArrays.remove(delegates, delegate, NO_DELEGATES);
+    if (scrimOwner == delegate) {
+      scrimOwner = null;
+    }
+    if (captured == delegate) {
+      captured = null;
+    }
+  }
+
+  /**
+   * Create the drag helper and scrim. The scrim's type is chosen by the first drawer which needs
+   * it.
+   */
+  void ensureDraggable(BehaviorDelegate delegate) {
+    if (dragger != null) {
+      return;
+    }
+    float density = parent.getResources().getDisplayMetrics().density;
+    dragger = ViewDragHelper.create(parent, this);
+    dragger.setEdgeTrackingEnabled(ViewDragHelper.EDGE_LEFT | ViewDragHelper.EDGE_RIGHT);
+    dragger.setMinVelocity(MIN_FLING_VELOCITY * density);
+
+    View child = delegate.child;
+    int scrimColor = delegate.scrimColor;
+    if (delegate.behavior.coordinatorScrim) {
+      scrimDrawer = new ContentScrimDrawer.Coordinator(parent, child, scrimColor);
+    } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      scrimDrawer = new ContentScrimDrawer.Lollipop(parent, child, scrimColor);
+    } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      scrimDrawer = new ContentScrimDrawer.JellyBeanMr2(parent, scrimColor);
+    } else {
+      scrimDrawer = new ContentScrimDrawer.Base(parent, child, scrimColor);
+    }
+    scrimOwner = delegate;
+  }
+
+  int getEdgeSize() {
+    return dragger.getEdgeSize();
+  }
+
+  /**
+   * The scrim, on behalf of {@code delegate}. A drawer which is on screen takes it over from
+   * one which is not. Returns null to a closed drawer while another drawer has it.
+   */
+  @Nullable ContentScrimDrawer claimScrim(BehaviorDelegate delegate, boolean onScreen) {
+    if (delegate != scrimOwner) {
+      if (!onScreen && scrimOwner != null) {
+        return null;
+      }
+      scrimOwner = delegate;
+      moveScrimBeneath(delegate.child);
+    }
+    return scrimDrawer;
+  }
+
+  /** The scrim if {@code delegate} has it, otherwise null. */
+  @Nullable ContentScrimDrawer scrimOf(BehaviorDelegate delegate) {
+    return delegate == scrimOwner ? scrimDrawer : null;
+  }
+
+  /** Hide the scrim if {@code delegate} has it, as when the drawer is pinned. */
+  void releaseScrim(BehaviorDelegate delegate) {
+    if (delegate == scrimOwner) {
+      scrimDrawer.setVisible(false);
+      scrimOwner = null;
+    }
+  }
+
+  private void moveScrimBeneath(View drawer) {
+    if (scrimDrawer instanceof ContentScrimDrawer.Coordinator) {
+      ((ContentScrimDrawer.Coordinator) scrimDrawer).setDrawer(drawer);
+    } else if (scrimDrawer instanceof View) {
+      // Only the drawer which has the scrim may draw above it.
+      View scrim = (View) scrimDrawer;
+      if (parent.indexOfChild(scrim) != parent.indexOfChild(drawer) - 1) {
+        parent.removeView(scrim);
+        parent.addView(scrim, parent.indexOfChild(drawer), scrim.getLayoutParams());
+      }
+    }
+  }
+
+  /** True when every other drawer is closed and at rest, leaving {@code delegate} free to move. */
+  boolean canOpen(BehaviorDelegate delegate) {
+    for (BehaviorDelegate other : delegates) {
+      if (other != delegate && !other.isPinned() && !other.isAtRest()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable private BehaviorDelegate delegateFor(View view) {
+    for (BehaviorDelegate delegate : delegates) {
+      if (delegate.child == view && !delegate.isPinned()) {
+        return delegate;
+      }
+    }
+    return null;
+  }
+
+  @Nullable private BehaviorDelegate delegateForEdge(int edgeFlags) {
+    for (BehaviorDelegate delegate : delegates) {
+      int edge = delegate.isLeft ? ViewDragHelper.EDGE_LEFT : ViewDragHelper.EDGE_RIGHT;
+      if ((edgeFlags & edge) == edge && !delegate.isPinned() && canOpen(delegate)) {
+        return delegate;
+      }
+    }
+    return null;
+  }
+
+  private boolean isOnEdge(BehaviorDelegate delegate, float x) {
+    int edgeSize = dragger.getEdgeSize();
+    return delegate.isLeft ? x < edgeSize : x > parent.getWidth() - edgeSize;
+  }
+
+  private void removePeek() {
+    parent.removeCallbacks(peekRunnable);
+  }
+
+  /** Drop the gesture in progress, as when a drawer is pinned part way through it. */
+  void cancelGesture() {
+    removePeek();
+    if (pendingMove != null) {
+      parent.removeCallbacks(flushMove);
+      pendingMove.recycle();
+      pendingMove = null;
+    }
+    if (dragger != null) {
+      dragger.cancel();
+    }
+    nestedScrolling = false;
+    ignoringGesture = false;
+  }
+
+  /** Drop work posted to the parent. Safe to call once for each of its drawers. */
+  void onDetachedFromWindow() {
+    removePeek();
+    parent.removeCallbacks(flushMove);
+    if (pendingMove != null) {
+      pendingMove.recycle();
+      pendingMove = null;
+    }
+    if (dragger != null) {
+      dragger.abort();
+    }
+    if (cancelEvent != null) {
+      cancelEvent.recycle();
+      cancelEvent = null;
+    }
+    lastEvent = null;
+  }
+
+  private void cancelChildViewTouch() {
+    // Cancel child touches
+    if (!childrenCanceledTouch) {
+      if (cancelEvent == null) {
+        // Obtained once and reused. Receivers only look at the action of a cancel.
+        final long now = SystemClock.uptimeMillis();
+        cancelEvent = MotionEvent.obtain(now, now, MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
+      }
+      final int childCount = parent.getChildCount();
+      for (int i = 0; i < childCount; i++) {
+        parent.getChildAt(i).dispatchTouchEvent(cancelEvent);
+      }
+      childrenCanceledTouch = true;
+    }
+  }
+
+  /**
+   * True when a gesture starting with {@code down} cannot affect any drawer: they are all closed
+   * and at rest and the touch is outside each one's edge. The rest of such a gesture bypasses the
+   * drag helper entirely.
+   */
+  private boolean isOutOfReach(MotionEvent down) {
+    float x = down.getX();
+    for (BehaviorDelegate delegate : delegates) {
+      if (!delegate.isPinned() && (!delegate.isAtRest() || isOnEdge(delegate, x))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * True when {@code ev} was already handled through the same entry point, having been offered
+   * to an earlier drawer's behavior. Otherwise records it as the last event handled.
+   */
+  private boolean isRepeat(MotionEvent ev, boolean intercept) {
+    // Events are pooled so the instance alone is not enough. An event which matches in every way
+    // checked here would not move a drawer anyway.
+    long eventTime = ev.getEventTime();
+    int action = ev.getAction();
+    if (ev == lastEvent
+        && intercept == lastIntercept
+        && eventTime == lastEventTime
+        && action == lastAction) {
+      return true;
+    }
+    lastEvent = ev;
+    lastIntercept = intercept;
+    lastEventTime = eventTime;
+    lastAction = action;
+    return false;
+  }
+
+  /**
+   * True for a cancel made up by the parent rather than one ending the gesture. CoordinatorLayout
+   * sends these to the behaviors beneath one which takes the gesture or starts blocking touches,
+   * and to the last behavior to handle touch once a gesture is over. Each is obtained fresh so it
+   * carries its own down time instead of the gesture's.
+   */
+  private boolean isSyntheticCancel(MotionEvent ev, int action) {
+    return action == MotionEvent.ACTION_CANCEL
+        && (gestureDownTime == -1 || ev.getDownTime() != gestureDownTime);
+  }
+
+  /** Track the gesture's down time so that the parent's made-up cancels can be told apart. */
+  private void trackGesture(MotionEvent ev, int action) {
+    if (action == MotionEvent.ACTION_DOWN) {
+      gestureDownTime = ev.getDownTime();
+    } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+      gestureDownTime = -1;
+    }
+  }
+
+  /** A new touch ends any property animation settle. */
+  private void finishPropertySettles() {
+    for (BehaviorDelegate delegate : delegates) {
+      delegate.finishPropertySettle();
+    }
+  }
+
+  boolean onInterceptTouchEvent(MotionEvent ev) {
+    int action = MotionEventCompat.getActionMasked(ev);
+    if (isSyntheticCancel(ev, action)) {
+      return false;
+    }
+    if (isRepeat(ev, true)) {
+      return lastResult;
+    }
+    boolean result = interceptTouchEvent(ev, action);
+    lastResult = result;
+    trackGesture(ev, action);
+    return result;
+  }
+
+  private boolean interceptTouchEvent(MotionEvent ev, int action) {
+    if (action == MotionEvent.ACTION_DOWN) {
+      finishPropertySettles();
+      nestedScrolling = false;
+      ignoringGesture = isOutOfReach(ev);
+      if (ignoringGesture) {
+        childrenCanceledTouch = false;
+      }
+    }
+    if (ignoringGesture) {
+      return false;
+    }
+
+    boolean interceptForDrag = dragger.shouldInterceptTouchEvent(ev);
+    boolean interceptForTap = false;
+    switch (action) {
+      case MotionEvent.ACTION_DOWN: {
+        float x = ev.getX();
+        float y = ev.getY();
+        initialMotionX = x;
+        initialMotionY = y;
+        View touchedView = dragger.findTopChildUnder((int) x, (int) y);
+        BehaviorDelegate touched = delegateFor(touchedView);
+        if (touched != null && touched.isSettling()) {
+          // Catch a moving drawer the way the drag helper catches a view it is settling.
+          dragger.captureChildView(touchedView, MotionEventCompat.getPointerId(ev, 0));
+          interceptForDrag = true;
+        } else if (touchedView != null && touched == null && isAnyOnScreen()) {
+          interceptForTap = true;
+        }
+        childrenCanceledTouch = false;
+        break;
+      }
+
+      case MotionEvent.ACTION_MOVE: {
+        // If we cross the touch slop, don't perform the delayed peek for an edge touch.
+        if (dragger.checkTouchSlop(ViewDragHelper.DIRECTION_ALL)) {
+          removePeek();
+        }
+        break;
+      }
+
+      case MotionEvent.ACTION_CANCEL:
+      case MotionEvent.ACTION_UP: {
+        closeDrawers(true);
+        childrenCanceledTouch = false;
+        break;
+      }
+    }
+
+    return interceptForDrag || interceptForTap || isAnyPeeking() || childrenCanceledTouch;
+  }
+
+  boolean onTouchEvent(MotionEvent ev) {
+    int action = MotionEventCompat.getActionMasked(ev);
+    if (isSyntheticCancel(ev, action)) {
+      return false;
+    }
+    if (isRepeat(ev, false)) {
+      return lastResult;
+    }
+    boolean result = touchEvent(ev, action);
+    lastResult = result;
+    trackGesture(ev, action);
+    return result;
+  }
+
+  private boolean touchEvent(MotionEvent ev, int action) {
+    if (action == MotionEvent.ACTION_DOWN) {
+      finishPropertySettles();
+      nestedScrolling = false;
+      ignoringGesture = isOutOfReach(ev);
+    }
+    if (ignoringGesture) {
+      return false;
+    }
+
+    BehaviorDelegate captured = this.captured;
+    if (action == MotionEvent.ACTION_MOVE && captured != null) {
+      captured.onDragMove(ev);
+    }
+
+    if (action == MotionEvent.ACTION_MOVE
+        && captured != null
+        && captured.behavior.coalesceDrags
+        && dragger.getViewDragState() == ViewDragHelper.STATE_DRAGGING
+        && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      coalesceMove(ev);
+      return true;
+    }
+    // Anything other than a batchable move must see the drag at its latest position.
+    flushPendingMove();
+    dragger.processTouchEvent(ev);
+
+    switch (action) {
+      case MotionEvent.ACTION_DOWN: {
+        initialMotionX = ev.getX();
+        initialMotionY = ev.getY();
+        childrenCanceledTouch = false;
+        break;
+      }
+
+      case MotionEvent.ACTION_UP: {
+        float x = ev.getX();
+        float y = ev.getY();
+        boolean peekingOnly = true;
+        View touchedView = dragger.findTopChildUnder((int) x, (int) y);
+        if (touchedView != null && delegateFor(touchedView) == null) {
+          final float dx = x - initialMotionX;
+          final float dy = y - initialMotionY;
+          final int slop = dragger.getTouchSlop();
+          if (dx * dx + dy * dy < slop * slop) {
+            // Taps close a dimmed open drawer but only if it isn't locked open.
+            if (isAnyOpen()) {
+              peekingOnly = false;
+            }
+          }
+        }
+        closeDrawers(peekingOnly);
+        break;
+      }
+
+      case MotionEvent.ACTION_CANCEL: {
+        closeDrawers(true);
+        childrenCanceledTouch = false;
+        break;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean isAnyOnScreen() {
+    for (BehaviorDelegate delegate : delegates) {
+      if (!delegate.isPinned() && delegate.isOnScreen()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isAnyPeeking() {
+    for (BehaviorDelegate delegate : delegates) {
+      if (!delegate.isPinned() && delegate.isPeeking()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isAnyOpen() {
+    for (BehaviorDelegate delegate : delegates) {
+      if (!delegate.isPinned() && delegate.isOpen()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void closeDrawers(boolean peekingOnly) {
+    // Also drop a peek which has not started yet so it can't show up after the gesture ends.
+    removePeek();
+    for (BehaviorDelegate delegate : delegates) {
+      if (!delegate.isPinned()) {
+        delegate.close(peekingOnly);
+      }
+    }
+  }
+
+  /**
+   * Fold {@code ev} and its historical samples into a pending move which is handed to the drag
+   * helper on the next frame.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private void coalesceMove(MotionEvent ev) {
+    if (pendingMove != null && !hasSamePointers(pendingMove, ev)) {
+      flushPendingMove();
+    }
+    if (pendingMove == null) {
+      pendingMove = MotionEvent.obtain(ev);
+      ViewCompat.postOnAnimation(parent, flushMove);
+      return;
+    }
+
+    int pointerCount = ev.getPointerCount();
+    if (pointerCoords.length < pointerCount) {
+      MotionEvent.PointerCoords[] newCoords = new MotionEvent.PointerCoords[pointerCount];
+      System.arraycopy(pointerCoords, 0, newCoords, 0, pointerCoords.length);
+      for (int i = pointerCoords.length; i < pointerCount; i++) {
+        newCoords[i] = new MotionEvent.PointerCoords();
+      }
+      pointerCoords = newCoords;
+    }
+    int metaState = ev.getMetaState();
+    int historySize = ev.getHistorySize();
+    for (int h = 0; h < historySize; h++) {
+      for (int p = 0; p < pointerCount; p++) {
+        ev.getHistoricalPointerCoords(p, h, pointerCoords[p]);
+      }
+      pendingMove.addBatch(ev.getHistoricalEventTime(h), pointerCoords, metaState);
+    }
+    for (int p = 0; p < pointerCount; p++) {
+      ev.getPointerCoords(p, pointerCoords[p]);
+    }
+    pendingMove.addBatch(ev.getEventTime(), pointerCoords, metaState);
+  }
+
+  private static boolean hasSamePointers(MotionEvent a, MotionEvent b) {
+    int pointerCount = a.getPointerCount();
+    if (pointerCount != b.getPointerCount()) {
+      return false;
+    }
+    for (int i = 0; i < pointerCount; i++) {
+      if (a.getPointerId(i) != b.getPointerId(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void flushPendingMove() {
+    MotionEvent move = pendingMove;
+    if (move != null) {
+      pendingMove = null;
+      parent.removeCallbacks(flushMove);
+      dragger.processTouchEvent(move);
+      move.recycle();
+    }
+  }
+
+  /**
+   * Hand the rest of the gesture to nested scrolling for {@code delegate}. Only allowed when the
+   * gesture began on that drawer's edge, where the drawer itself could have been dragged from.
+   */
+  boolean startNestedScroll(BehaviorDelegate delegate) {
+    if (!isOnEdge(delegate, initialMotionX)) {
+      return false;
+    }
+    if (!nestedScrolling) {
+      if (ignoringGesture) {
+        return false;
+      }
+      nestedScrolling = true;
+      // Stop the drag helper tracking this gesture so that only one of us ever moves for it.
+      ignoringGesture = true;
+      removePeek();
+      dragger.cancel();
+    }
+    return true;
+  }
+
+  @Override public boolean tryCaptureView(View child, int pointerId) {
+    BehaviorDelegate delegate = delegateFor(child);
+    return delegate != null && canOpen(delegate);
+  }
+
+  @Override public void onViewCaptured(View capturedChild, int activePointerId) {
+    captured = delegateFor(capturedChild);
+    if (captured != null) {
+      captured.onViewCaptured();
+    }
+  }
+
+  @Override public void onViewReleased(View releasedChild, float xvel, float yvel) {
+    BehaviorDelegate delegate = delegateFor(releasedChild);
+    if (delegate != null) {
+      delegate.onViewReleased(xvel);
+    }
+  }
+
+  @Override public void onViewDragStateChanged(int state) {
+    // The drag helper only drags. Settles are run by each drawer's engine.
+    BehaviorDelegate delegate = captured;
+    if (state == ViewDragHelper.STATE_IDLE) {
+      captured = null;
+    }
+    if (delegate != null) {
+      delegate.onDragStateChanged(state == ViewDragHelper.STATE_DRAGGING);
+    }
+  }
+
+  @Override
+  public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
+    BehaviorDelegate delegate = delegateFor(changedView);
+    if (delegate != null) {
+      delegate.onViewPositionChanged(left);
+    }
+  }
+
+  @Override public void onEdgeTouched(int edgeFlags, int pointerId) {
+    BehaviorDelegate delegate = delegateForEdge(edgeFlags);
+    if (delegate != null) {
+      delegate.onEdgeTouched();
+      peekTarget = delegate;
+      removePeek();
+      parent.postDelayed(peekRunnable, PEEK_DELAY);
+    }
+  }
+
+  @Override public void onEdgeDragStarted(int edgeFlags, int pointerId) {
+    BehaviorDelegate delegate = delegateForEdge(edgeFlags);
+    if (delegate != null) {
+      delegate.onEdgeDragStarted();
+      dragger.captureChildView(delegate.child, pointerId);
+    }
+  }
+
+  @Override public int getViewHorizontalDragRange(View child) {
+    return delegateFor(child) != null ? child.getWidth() : 0;
+  }
+
+  @Override public int clampViewPositionHorizontal(View child, int left, int dx) {
+    BehaviorDelegate delegate = delegateFor(child);
+    return delegate != null ? delegate.clamp(left) : child.getLeft();
+  }
+
+  @Override public int clampViewPositionVertical(View child, int top, int dy) {
+    return child.getTop();
+  }
+}
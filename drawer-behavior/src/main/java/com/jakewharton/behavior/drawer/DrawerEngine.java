@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+/**
+ * A drawer's geometry, open state, and settle motion with no dependency on Android. Positions are
+ * the drawer's left edge in its parent. Times are milliseconds supplied by the caller so a settle
+ * can be stepped frame by frame on any clock.
+ */
+final class DrawerEngine {
+  // Values match ViewDragHelper's states.
+  static final int STATE_IDLE = 0;
+  static final int STATE_DRAGGING = 1;
+  static final int STATE_SETTLING = 2;
+
+  static final int SETTLED_NONE = 0;
+  static final int SETTLED_OPENED = 1;
+  static final int SETTLED_CLOSED = 2;
+
+  private static final int BASE_SETTLE_DURATION = 256; // ms
+  private static final int MAX_SETTLE_DURATION = 600; // ms
+  /** Natural frequency of the support library's medium spring stiffness of 1500. */
+  private static final double SPRING_FREQUENCY = Math.sqrt(1500); // rad/s
+  private static final int SPRING_THRESHOLD = 1; // px
+
+  private final boolean isLeft;
+  private int parentWidth;
+  private int drawerWidth;
+  private int minVelocity; // px/s
+  private int maxVelocity; // px/s
+
+  private float offset;
+  private boolean opened;
+  private boolean peeking;
+  private boolean dragging;
+  private boolean settling;
+  private boolean spring;
+  private int committedState = STATE_IDLE;
+
+  private int settleFrom;
+  private int settleTo;
+  private long settleStart;
+  private int settleDuration;
+  private float settleVelocity; // px/s, spring only
+
+  DrawerEngine(boolean isLeft) {
+    this.isLeft = isLeft;
+  }
+
+  /** The same quintic curve {@code ViewDragHelper} uses to settle. */
+  static float settleCurve(float t) {
+    t -= 1.0f;
+    return t * t * t * t * t + 1.0f;
+  }
+
+  void setSize(int parentWidth, int drawerWidth) {
+    this.parentWidth = parentWidth;
+    this.drawerWidth = drawerWidth;
+  }
+
+  /** The fling velocities a curve settle's duration takes into account, as for the drag helper. */
+  void setVelocityRange(int minVelocity, int maxVelocity) {
+    this.minVelocity = minVelocity;
+    this.maxVelocity = maxVelocity;
+  }
+
+  int closedLeft() {
+    return isLeft ? -drawerWidth : parentWidth;
+  }
+
+  int openLeft() {
+    return isLeft ? 0 : parentWidth - drawerWidth;
+  }
+
+  /** The fraction of the drawer which is on screen when its left edge is at {@code left}. */
+  float offsetAt(int left) {
+    if (isLeft) {
+      return (float) (drawerWidth + left) / drawerWidth;
+    } else {
+      return (float) (parentWidth - left) / drawerWidth;
+    }
+  }
+
+  /** Where the drawer is laid out for the current offset. */
+  int layoutLeft() {
+    if (isLeft) {
+      return -drawerWidth + (int) (drawerWidth * offset);
+    } else {
+      return parentWidth - (int) (drawerWidth * offset);
+    }
+  }
+
+  int clamp(int left) {
+    if (isLeft) {
+      return Math.max(-drawerWidth, Math.min(left, 0));
+    } else {
+      return Math.max(parentWidth - drawerWidth, Math.min(left, parentWidth));
+    }
+  }
+
+  /** The position which shows {@code peekDistance} pixels of the drawer. */
+  int peekLeft(int peekDistance) {
+    return isLeft ? -drawerWidth + peekDistance : parentWidth - peekDistance;
+  }
+
+  /** True when moving from {@code from} to {@code to} shows more of the drawer. */
+  boolean reveals(int from, int to) {
+    return isLeft ? from < to : from > to;
+  }
+
+  /** The position a drawer released with horizontal velocity {@code xvel} should settle at. */
+  int releasedLeft(float xvel) {
+    // Offset is how open the drawer is, therefore left/right values
+    // are reversed from one another.
+    if (isLeft) {
+      return xvel > 0 || xvel == 0 && offset > 0.5f ? 0 : -drawerWidth;
+    } else {
+      return xvel < 0 || xvel == 0 && offset > 0.5f ? parentWidth - drawerWidth : parentWidth;
+    }
+  }
+
+  float offset() {
+    return offset;
+  }
+
+  /** Returns false if the offset was already {@code offset}. */
+  boolean setOffset(float offset) {
+    if (offset == this.offset) {
+      return false;
+    }
+    this.offset = offset;
+    return true;
+  }
+
+  boolean isOpen() {
+    return opened;
+  }
+
+  /** Consider the drawer open without it having settled there, as when restoring state. */
+  void markOpen() {
+    opened = true;
+  }
+
+  /** Consider the drawer closed without it having settled there, as when it is unpinned. */
+  void markClosed() {
+    opened = false;
+  }
+
+  /**
+   * Record that the drawer has come to rest. Returns {@link #SETTLED_OPENED} or
+   * {@link #SETTLED_CLOSED} if that newly opened or closed it, otherwise {@link #SETTLED_NONE}.
+   */
+  int settled() {
+    if (offset == 0 && opened) {
+      opened = false;
+      return SETTLED_CLOSED;
+    }
+    if (offset == 1 && !opened) {
+      opened = true;
+      return SETTLED_OPENED;
+    }
+    return SETTLED_NONE;
+  }
+
+  boolean isPeeking() {
+    return peeking;
+  }
+
+  void setPeeking(boolean peeking) {
+    this.peeking = peeking;
+  }
+
+  boolean isDragging() {
+    return dragging;
+  }
+
+  void setDragging(boolean dragging) {
+    this.dragging = dragging;
+  }
+
+  int state() {
+    if (dragging) {
+      return STATE_DRAGGING;
+    }
+    return settling ? STATE_SETTLING : STATE_IDLE;
+  }
+
+  /** The state most recently passed to {@link #commitState()}. */
+  int committedState() {
+    return committedState;
+  }
+
+  /** Mark the current state as reported. Returns false if it already was. */
+  boolean commitState() {
+    int state = state();
+    if (state == committedState) {
+      return false;
+    }
+    committedState = state;
+    return true;
+  }
+
+  /** Whether settles started after this use a spring. */
+  void setSpring(boolean spring) {
+    this.spring = spring;
+  }
+
+  /** True when the drawer is closed and nothing is moving it. */
+  boolean isAtRest() {
+    return offset == 0 && !peeking && state() == STATE_IDLE;
+  }
+
+  /**
+   * Begin settling from {@code from} to {@code to} at time {@code now}. Returns false and does
+   * nothing when the drawer is already there.
+   * <p>
+   * A spring which is already settling and is given no new velocity keeps the one it has.
+   */
+  boolean startSettle(int from, int to, float xvel, long now) {
+    if (from == to) {
+      return false;
+    }
+    if (spring) {
+      settleVelocity = xvel == 0 && settling && isSpringSettle()
+          ? (float) springVelocity(now - settleStart)
+          : xvel;
+      settleDuration = -1;
+    } else {
+      settleDuration = computeSettleDuration(to - from, xvel);
+    }
+    settleFrom = from;
+    settleTo = to;
+    settleStart = now;
+    settling = true;
+    return true;
+  }
+
+  private boolean isSpringSettle() {
+    return settleDuration < 0;
+  }
+
+  boolean isSettling() {
+    return settling;
+  }
+
+  int settleTarget() {
+    return settleTo;
+  }
+
+  /** The length of a curve settle. Springs have no fixed duration and return -1. */
+  int settleDuration() {
+    return settleDuration;
+  }
+
+  /**
+   * The position for a frame drawn at {@code now}. The settle ends with the frame which reaches
+   * its target, or for a spring, comes within {@link #SPRING_THRESHOLD} of it.
+   */
+  int stepSettle(long now) {
+    long elapsed = now - settleStart;
+    if (isSpringSettle()) {
+      // Overshoot is clipped at the open and closed positions so a spring never passes them.
+      int left = clamp((int) Math.round(springPosition(elapsed)));
+      if (Math.abs(settleTo - left) <= SPRING_THRESHOLD) {
+        settling = false;
+        return settleTo;
+      }
+      return left;
+    }
+    if (elapsed >= settleDuration) {
+      settling = false;
+      return settleTo;
+    }
+    float t = settleCurve((float) elapsed / settleDuration);
+    return settleFrom + Math.round(t * (settleTo - settleFrom));
+  }
+
+  /** Stop settling wherever the drawer currently is. */
+  void cancelSettle() {
+    settling = false;
+  }
+
+  // A critically damped spring from settleFrom with settleVelocity has the closed form
+  // x(t) = settleTo + (c1 + c2 t) e^(-wt) where c1 = settleFrom - settleTo and c2 = v0 + w c1.
+
+  private double springPosition(long elapsedMs) {
+    double t = elapsedMs / 1000.0;
+    double c1 = settleFrom - settleTo;
+    double c2 = settleVelocity + SPRING_FREQUENCY * c1;
+    return settleTo + (c1 + c2 * t) * Math.exp(-SPRING_FREQUENCY * t);
+  }
+
+  private double springVelocity(long elapsedMs) {
+    double t = elapsedMs / 1000.0;
+    double c1 = settleFrom - settleTo;
+    double c2 = settleVelocity + SPRING_FREQUENCY * c1;
+    return (c2 - SPRING_FREQUENCY * (c1 + c2 * t)) * Math.exp(-SPRING_FREQUENCY * t);
+  }
+
+  /** {@code ViewDragHelper.computeSettleDuration} for movement along the x axis alone. */
+  private int computeSettleDuration(int dx, float xvel) {
+    int velocity = clampMag((int) xvel, minVelocity, maxVelocity);
+    int width = parentWidth;
+    int halfWidth = width / 2;
+    float distanceRatio = Math.min(1f, (float) Math.abs(dx) / width);
+    float distance = halfWidth + halfWidth * distanceInfluenceForSnapDuration(distanceRatio);
+
+    int duration;
+    velocity = Math.abs(velocity);
+    if (velocity > 0) {
+      duration = 4 * Math.round(1000 * Math.abs(distance / velocity));
+    } else {
+      float range = (float) Math.abs(dx) / drawerWidth;
+      duration = (int) ((range + 1) * BASE_SETTLE_DURATION);
+    }
+    return Math.min(duration, MAX_SETTLE_DURATION);
+  }
+
+  /** Zero below {@code absMin} and capped at {@code absMax}, keeping the sign. */
+  private static int clampMag(int value, int absMin, int absMax) {
+    int absValue = Math.abs(value);
+    if (absValue < absMin) {
+      return 0;
+    }
+    if (absValue > absMax) {
+      return value > 0 ? absMax : -absMax;
+    }
+    return value;
+  }
+
+  /** Scales the distance a snap appears to cover, as in {@code ViewDragHelper}. */
+  private static float distanceInfluenceForSnapDuration(float f) {
+    f -= 0.5f; // center the values about 0.
+    f *= 0.3f * Math.PI / 2.0f;
+    return (float) Math.sin(f);
+  }
+}
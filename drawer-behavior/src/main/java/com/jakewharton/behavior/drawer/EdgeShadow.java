@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.animation.TimeInterpolator;
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.design.widget.CoordinatorLayout.LayoutParams;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * A shadow cast by the drawer's inner edge onto the content. The gradient is rasterized once into
+ * a strip one pixel tall which is stretched to this view's height. Following the drawer only
+ * changes the translation and alpha view properties so the strip is never redrawn while dragging.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+@SuppressLint("ViewConstructor") // Created only programmatically.
+final class EdgeShadow extends PropertyOverlay {
+  private final boolean isLeft;
+  private final int shadowWidth;
+  private final Bitmap strip;
+  private final Rect bounds = new Rect();
+
+  EdgeShadow(CoordinatorLayout parent, View child, int shadowWidth, int shadowColor,
+      boolean isLeft) {
+    super(parent.getContext());
+    this.isLeft = isLeft;
+    this.shadowWidth = shadowWidth;
+    this.strip = createStrip(shadowWidth, shadowColor, isLeft);
+    ViewCompat.setImportantForAccessibility(this, ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO);
+    // Above the content and scrim but beneath the drawer.
+    parent.addView(this, parent.indexOfChild(child), new LayoutParams(shadowWidth, MATCH_PARENT));
+  }
+
+  /** A strip which is darkest next to the drawer and fades out quadratically away from it. */
+  private static Bitmap createStrip(int width, int color, boolean isLeft) {
+    int baseAlpha = (color & 0xff000000) >>> 24;
+    int[] pixels = new int[width];
+    for (int x = 0; x < width; x++) {
+      float distance = (x + 0.5f) / width;
+      float falloff = (1 - distance) * (1 - distance);
+      int pixel = (int) (baseAlpha * falloff) << 24 | (color & 0xffffff);
+      pixels[isLeft ? x : width - 1 - x] = pixel;
+    }
+    return Bitmap.createBitmap(pixels, width, 1, Bitmap.Config.ARGB_8888);
+  }
+
+  @Override protected void onDraw(Canvas canvas) {
+    bounds.set(0, 0, getWidth(), getHeight());
+    canvas.drawBitmap(strip, null, bounds, null);
+  }
+
+  /** Place the shadow against the drawer edge at {@code edge} with the given opacity. */
+  void update(int edge, float alpha) {
+    setTranslationAndAlpha(translationFor(edge), alpha);
+  }
+
+  /** Animate to the given edge and opacity with view property animations. */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+  void animateTo(int edge, float alpha, long duration, TimeInterpolator interpolator) {
+    animateTranslationAndAlpha(translationFor(edge), alpha, duration, interpolator);
+  }
+
+  private int translationFor(int edge) {
+    return isLeft ? edge : edge - shadowWidth;
+  }
+}
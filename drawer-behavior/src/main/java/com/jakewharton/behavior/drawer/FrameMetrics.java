@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.view.View;
+
+/** Allocation-free frame counters backing {@link DrawerBehavior.FrameMetricsListener}. */
+final class FrameMetrics {
+  interface Clock {
+    long nanoTime();
+  }
+
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  private final Clock clock;
+  /** A frame arriving more than one and a half vsync intervals after the previous one is late. */
+  private final long lateFrameNanos;
+
+  private boolean settling;
+  private long settleStartNanos;
+  private long lastFrameNanos;
+  private int settleFrames;
+  private int lateFrames;
+
+  FrameMetrics(Clock clock, float refreshRate) {
+    this.clock = clock;
+    this.lateFrameNanos = (long) (1.5f * 1000000000L / refreshRate);
+  }
+
+  long now() {
+    return clock.nanoTime();
+  }
+
+  void settleStarted() {
+    settling = true;
+    settleStartNanos = clock.nanoTime();
+    lastFrameNanos = settleStartNanos;
+    settleFrames = 0;
+    lateFrames = 0;
+  }
+
+  void settleFrame() {
+    if (!settling) {
+      // Listener was attached mid-settle. Count from here.
+      settleStarted();
+    }
+    long now = clock.nanoTime();
+    if (now - lastFrameNanos > lateFrameNanos) {
+      lateFrames++;
+    }
+    lastFrameNanos = now;
+    settleFrames++;
+  }
+
+  void settleFinished(DrawerBehavior.FrameMetricsListener listener, View drawerView) {
+    if (settling) {
+      settling = false;
+      listener.onDrawerSettled(drawerView, settleFrames, lastFrameNanos - settleStartNanos,
+          lateFrames);
+    }
+  }
+}
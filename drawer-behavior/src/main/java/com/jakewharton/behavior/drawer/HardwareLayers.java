@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+/**
+ * Promotes a drawer and its content to hardware layers while it moves and puts back the layer
+ * types they had before.
+ */
+final class HardwareLayers {
+  private final CoordinatorLayout parent;
+  private final View drawer;
+
+  private View[] views = new View[0];
+  private int[] types = new int[0];
+  private int count;
+
+  HardwareLayers(CoordinatorLayout parent, View drawer) {
+    this.parent = parent;
+    this.drawer = drawer;
+  }
+
+  /**
+   * @param which A combination of {@link DrawerBehavior#HARDWARE_LAYER_DRAWER} and
+   * {@link DrawerBehavior#HARDWARE_LAYER_CONTENT}.
+   */
+  void promote(int which) {
+    if (which == 0) {
+      return;
+    }
+
+    int childCount = parent.getChildCount();
+    if (views.length < childCount) {
+      views = new View[childCount];
+      types = new int[childCount];
+    }
+    for (int i = 0; i < childCount; i++) {
+      View view = parent.getChildAt(i);
+      int flag = view == drawer
+          ? DrawerBehavior.HARDWARE_LAYER_DRAWER
+          : DrawerBehavior.HARDWARE_LAYER_CONTENT;
+      // The scrim changes every frame so a layer would only add a copy.
+      if ((which & flag) == 0
+          || view instanceof ContentScrimDrawer
+          || view instanceof EdgeShadow) {
+        continue;
+      }
+      views[count] = view;
+      types[count] = ViewCompat.getLayerType(view);
+      count++;
+      ViewCompat.setLayerType(view, ViewCompat.LAYER_TYPE_HARDWARE, null);
+    }
+  }
+
+  void restore() {
+    for (int i = 0; i < count; i++) {
+      ViewCompat.setLayerType(views[i], types[i], null);
+      views[i] = null;
+    }
+    count = 0;
+  }
+}
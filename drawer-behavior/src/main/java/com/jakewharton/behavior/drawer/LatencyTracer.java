@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Measures the time from a drag event to the parent's next draw which includes the drawer
+ * position that event produced. The oldest event not yet drawn is measured, so a frame which
+ * consumes several events reports its worst latency.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class LatencyTracer implements ViewTreeObserver.OnDrawListener {
+  private final View parent;
+  private final DrawerBehavior.LatencyHistogram histogram;
+
+  private boolean listening;
+  private boolean pending;
+  private boolean moved;
+  private long eventTime; // uptime ms
+
+  LatencyTracer(View parent, DrawerBehavior.LatencyHistogram histogram) {
+    this.parent = parent;
+    this.histogram = histogram;
+  }
+
+  /** Begin listening for draws. Must not be called from within a draw. */
+  void start() {
+    if (!listening) {
+      parent.getViewTreeObserver().addOnDrawListener(this);
+      listening = true;
+    }
+  }
+
+  /** Stop listening for draws and drop any event not yet drawn. Must not be called from a draw. */
+  void stop() {
+    if (listening) {
+      parent.getViewTreeObserver().removeOnDrawListener(this);
+      listening = false;
+    }
+    pending = false;
+    moved = false;
+  }
+
+  void eventReceived(long eventTime) {
+    if (listening && !pending) {
+      pending = true;
+      this.eventTime = eventTime;
+    }
+  }
+
+  void positionChanged() {
+    if (pending) {
+      moved = true;
+    }
+  }
+
+  @Override public void onDraw() {
+    if (!moved) {
+      return;
+    }
+    pending = false;
+    moved = false;
+
+    long latency = SystemClock.uptimeMillis() - eventTime;
+    int bucket = histogram.record(latency);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      traceLatency(bucket);
+    }
+  }
+
+  /** Mark the draw with a section named for its latency bucket so it can be found in a trace. */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private static void traceLatency(int bucket) {
+    Trace.beginSection(DrawerBehavior.LatencyHistogram.TRACE_LABELS[bucket]);
+    Trace.endSection();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.animation.TimeInterpolator;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.View;
+
+/**
+ * A view drawn once which follows the drawer using only the translation and alpha view
+ * properties, neither of which re-records its display list.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+abstract class PropertyOverlay extends View {
+  private boolean visible;
+
+  PropertyOverlay(Context context) {
+    super(context);
+    setVisibility(INVISIBLE);
+  }
+
+  @Override public boolean hasOverlappingRendering() {
+    // A single draw can be faded directly without an offscreen buffer.
+    return false;
+  }
+
+  final void setTranslationAndAlpha(float translationX, float alpha) {
+    setTranslationX(translationX);
+    setAlpha(alpha);
+  }
+
+  /** Animate to the given translation and alpha with view property animations. */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+  final void animateTranslationAndAlpha(float translationX, float alpha, long duration,
+      TimeInterpolator interpolator) {
+    animate()
+        .translationX(translationX)
+        .alpha(alpha)
+        .setDuration(duration)
+        .setInterpolator(interpolator)
+        .start();
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+  final void cancelAnimation() {
+    animate().cancel();
+  }
+
+  public final void setVisible(boolean visible) {
+    if (this.visible != visible) {
+      setVisibility(visible ? VISIBLE : INVISIBLE);
+      this.visible = visible;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+/**
+ * Attributes allocations made on the test thread to this library, to Robolectric's shadows, or to
+ * the framework. An allocation belongs to the library only when the library allocated it
+ * directly. Anything allocated inside a framework call is overhead which a device may not share.
+ */
+final class AllocationTracker implements Sampler {
+  private static final String LIBRARY_PACKAGE = "com.jakewharton.behavior.drawer.";
+  private static final String ROBOLECTRIC_PACKAGE = "org.robolectric.";
+  private static final String INSTRUMENTER_PACKAGE = "com.google.monitoring.";
+
+  private static AllocationTracker instance;
+
+  /** Requires the {@code java-allocation-instrumenter} agent and {@link DrawerTestRunner}. */
+  static AllocationTracker get() {
+    if (instance == null) {
+      instance = new AllocationTracker();
+      AllocationRecorder.addSampler(instance);
+    }
+    return instance;
+  }
+
+  private Thread thread;
+  private boolean recording;
+
+  long libraryBytes;
+  int libraryAllocations;
+  long robolectricBytes;
+  long frameworkBytes;
+  String firstLibraryAllocation;
+
+  private AllocationTracker() {
+  }
+
+  void start() {
+    libraryBytes = 0;
+    libraryAllocations = 0;
+    robolectricBytes = 0;
+    frameworkBytes = 0;
+    firstLibraryAllocation = null;
+    thread = Thread.currentThread();
+    recording = true;
+  }
+
+  void stop() {
+    recording = false;
+  }
+
+  @Override public void sampleAllocation(int count, String desc, Object newObj, long size) {
+    if (!recording || Thread.currentThread() != thread) {
+      return;
+    }
+    recording = false; // Walking the stack allocates.
+    try {
+      StackTraceElement[] stack = new Throwable().getStackTrace();
+      boolean allocationSite = true;
+      for (int i = 1; i < stack.length; i++) {
+        String className = stack[i].getClassName();
+        if (className.startsWith(INSTRUMENTER_PACKAGE)) {
+          continue;
+        }
+        if (isLibrary(className)) {
+          if (allocationSite) {
+            libraryBytes += size;
+            libraryAllocations++;
+            if (firstLibraryAllocation == null) {
+              firstLibraryAllocation = desc + " at " + stack[i];
+            }
+            return;
+          }
+          break;
+        }
+        allocationSite = false;
+        if (className.startsWith(ROBOLECTRIC_PACKAGE)) {
+          robolectricBytes += size;
+          return;
+        }
+      }
+      frameworkBytes += size;
+    } finally {
+      recording = true;
+    }
+  }
+
+  private static boolean isLibrary(String className) {
+    return className.startsWith(LIBRARY_PACKAGE)
+        && !className.endsWith("Test")
+        && !className.startsWith(AllocationTracker.class.getName());
+  }
+}
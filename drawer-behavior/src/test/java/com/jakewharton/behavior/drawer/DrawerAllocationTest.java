@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.design.widget.CoordinatorLayout;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static android.view.View.MeasureSpec.EXACTLY;
+import static android.view.View.MeasureSpec.makeMeasureSpec;
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replays drags and settles against a real parent and fails on any allocation the library makes in
+ * a single drag move or a single settle frame once the gesture is under way. Allocations made by
+ * Robolectric's shadows and by the framework are measured separately and reported, not asserted.
+ */
+@RunWith(DrawerTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public final class DrawerAllocationTest {
+  private static final int DRAWER_WIDTH = 200;
+  private static final int WARM_UP_MOVES = 10;
+  private static final int MEASURED_MOVES = 20;
+
+  private final AllocationTracker allocations = AllocationTracker.get();
+  private long robolectricBytes;
+  private long frameworkBytes;
+  private int measured;
+
+  private DrawerBehavior behavior;
+  private CoordinatorLayout parent;
+  private View drawer;
+
+  @Before public void setUp() {
+    // Settle frames are stepped by the test, not the looper.
+    Robolectric.getForegroundThreadScheduler().pause();
+
+    // CoordinatorLayout requires an AppCompat theme.
+    Context context =
+        new ContextThemeWrapper(RuntimeEnvironment.application, R.style.Theme_AppCompat);
+    behavior = new DrawerBehavior(Gravity.LEFT);
+    parent = new CoordinatorLayout(context);
+    parent.addView(new View(context),
+        new CoordinatorLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT));
+    CoordinatorLayout.LayoutParams params =
+        new CoordinatorLayout.LayoutParams(DRAWER_WIDTH, MATCH_PARENT);
+    params.setBehavior(behavior);
+    drawer = new FrameLayout(context);
+    parent.addView(drawer, params);
+
+    parent.measure(makeMeasureSpec(480, EXACTLY), makeMeasureSpec(800, EXACTLY));
+    parent.layout(0, 0, 480, 800);
+  }
+
+  @After public void reportBaseline() {
+    if (measured > 0) {
+      System.out.println("Excluded per measured call: " + robolectricBytes / measured
+          + " bytes by Robolectric, " + frameworkBytes / measured + " bytes by the framework");
+    }
+  }
+
+  @Test public void dragMovesDoNotAllocate() {
+    long downTime = SystemClock.uptimeMillis();
+    startDrag(downTime);
+    MotionEvent[] moves = moves(downTime, 61, MEASURED_MOVES);
+
+    for (MotionEvent move : moves) {
+      allocations.start();
+      behavior.onTouchEvent(parent, drawer, move);
+      allocations.stop();
+      assertNoLibraryAllocation("drag move");
+    }
+  }
+
+  @Test public void settleFramesDoNotAllocate() {
+    assertSettleFramesDoNotAllocate();
+  }
+
+  @Test public void springSettleFramesDoNotAllocate() {
+    behavior.setSpringSettleEnabled(true);
+    assertSettleFramesDoNotAllocate();
+  }
+
+  private void assertSettleFramesDoNotAllocate() {
+    long downTime = SystemClock.uptimeMillis();
+    startDrag(downTime);
+    // Release part way open so there is some distance left to settle.
+    MotionEvent up = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(),
+        MotionEvent.ACTION_UP, 61, 400, 0);
+    behavior.onTouchEvent(parent, drawer, up);
+
+    BehaviorDelegate delegate = (BehaviorDelegate) drawer.getTag(R.id.behavior_drawer_delegate);
+    SystemClock.sleep(16);
+    assertTrue("Settle did not start", delegate.settleFrame());
+
+    int frames = 0;
+    boolean settling = true;
+    while (settling) {
+      SystemClock.sleep(16);
+      allocations.start();
+      settling = delegate.settleFrame();
+      allocations.stop();
+      // The last frame reports the drawer's new state, which may allocate once per settle.
+      if (settling) {
+        assertNoLibraryAllocation("settle frame");
+        frames++;
+      }
+    }
+    assertTrue("Too few settle frames to measure", frames > 2);
+  }
+
+  /** Touch the drawer's edge and drag it far enough to capture it and warm up the drag. */
+  private void startDrag(long downTime) {
+    MotionEvent down =
+        MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, 1, 400, 0);
+    behavior.onTouchEvent(parent, drawer, down);
+    for (MotionEvent move : moves(downTime, 1, WARM_UP_MOVES)) {
+      behavior.onTouchEvent(parent, drawer, move);
+    }
+  }
+
+  /** Obtain moves ahead of dispatching them so that creating them is not measured. */
+  private static MotionEvent[] moves(long downTime, float startX, int count) {
+    MotionEvent[] moves = new MotionEvent[count];
+    for (int i = 0; i < count; i++) {
+      SystemClock.sleep(8);
+      float x = startX + (i + 1) * 6;
+      moves[i] = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(),
+          MotionEvent.ACTION_MOVE, x, 400, 0);
+    }
+    return moves;
+  }
+
+  private void assertNoLibraryAllocation(String what) {
+    if (allocations.libraryBytes > 0) {
+      fail("A " + what + " allocated " + allocations.libraryBytes + " bytes, first "
+          + allocations.firstLibraryAllocation);
+    }
+    robolectricBytes += allocations.robolectricBytes;
+    frameworkBytes += allocations.frameworkBytes;
+    measured++;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.design.widget.CoordinatorLayout;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+import java.lang.ref.WeakReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static android.view.View.MeasureSpec.EXACTLY;
+import static android.view.View.MeasureSpec.makeMeasureSpec;
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a behavior which outlives its parent does not keep the parent's view hierarchy, and
+ * with it the parent's context, reachable. The hierarchy is checked rather than an activity
+ * because Robolectric 3.0 itself retains every activity: its accessibility manager service
+ * registers a receiver on each activity which is never unregistered.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public final class DrawerBehaviorRetentionTest {
+  @Test public void behaviorOutlivingItsParentDoesNotRetainIt() {
+    DrawerBehavior behavior = new DrawerBehavior(Gravity.LEFT);
+    WeakReference<View> parent = useAndDrop(behavior);
+
+    awaitCollection(parent);
+    assertNull("Parent retained by a behavior which outlived it", parent.get());
+  }
+
+  @Test public void behaviorSharedByTwoParentsRetainsNeither() {
+    DrawerBehavior behavior = new DrawerBehavior(Gravity.LEFT);
+    WeakReference<View> first = useAndDrop(behavior);
+    WeakReference<View> second = useAndDrop(behavior);
+
+    awaitCollection(first);
+    awaitCollection(second);
+    assertNull("First parent retained", first.get());
+    assertNull("Second parent retained", second.get());
+  }
+
+  /**
+   * Show a drawer using {@code behavior} in a new parent, touch it, then drop the parent. Kept in
+   * its own frame so no local outlives the call.
+   */
+  private static WeakReference<View> useAndDrop(DrawerBehavior behavior) {
+    // CoordinatorLayout requires an AppCompat theme.
+    Context context =
+        new ContextThemeWrapper(RuntimeEnvironment.application, R.style.Theme_AppCompat);
+    CoordinatorLayout parent = new CoordinatorLayout(context);
+    parent.addView(new View(context),
+        new CoordinatorLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT));
+    CoordinatorLayout.LayoutParams params = new CoordinatorLayout.LayoutParams(200, MATCH_PARENT);
+    params.setBehavior(behavior);
+    parent.addView(new FrameLayout(context), params);
+
+    parent.measure(makeMeasureSpec(480, EXACTLY), makeMeasureSpec(800, EXACTLY));
+    parent.layout(0, 0, 480, 800);
+    // Away from the edge so no peek is posted.
+    tap(parent, 240, 400);
+
+    Robolectric.flushForegroundThreadScheduler();
+    return new WeakReference<View>(parent);
+  }
+
+  private static void tap(View parent, float x, float y) {
+    long now = SystemClock.uptimeMillis();
+    MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, x, y, 0);
+    parent.dispatchTouchEvent(down);
+    down.recycle();
+    MotionEvent up = MotionEvent.obtain(now, now + 50, MotionEvent.ACTION_UP, x, y, 0);
+    parent.dispatchTouchEvent(up);
+    up.recycle();
+  }
+
+  private static void awaitCollection(WeakReference<?> reference) {
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+      System.runFinalization();
+    }
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class DrawerEngineTest {
+  private static final int PARENT_WIDTH = 480;
+  private static final int DRAWER_WIDTH = 200;
+  private static final int FRAME = 16; // ms
+  private static final int MIN_VELOCITY = 400; // px/s
+  private static final int MAX_VELOCITY = 8000; // px/s
+
+  private static DrawerEngine engine(boolean isLeft) {
+    DrawerEngine engine = new DrawerEngine(isLeft);
+    engine.setSize(PARENT_WIDTH, DRAWER_WIDTH);
+    engine.setVelocityRange(MIN_VELOCITY, MAX_VELOCITY);
+    return engine;
+  }
+
+  @Test public void positions() {
+    DrawerEngine left = engine(true);
+    assertEquals(-200, left.closedLeft());
+    assertEquals(0, left.openLeft());
+    assertEquals(-150, left.peekLeft(50));
+    assertEquals(0.25f, left.offsetAt(-150), 0f);
+
+    DrawerEngine right = engine(false);
+    assertEquals(480, right.closedLeft());
+    assertEquals(280, right.openLeft());
+    assertEquals(430, right.peekLeft(50));
+    assertEquals(0.25f, right.offsetAt(430), 0f);
+  }
+
+  @Test public void layoutFollowsOffset() {
+    DrawerEngine left = engine(true);
+    DrawerEngine right = engine(false);
+    left.setOffset(0.5f);
+    right.setOffset(0.5f);
+    assertEquals(-100, left.layoutLeft());
+    assertEquals(380, right.layoutLeft());
+  }
+
+  @Test public void clamp() {
+    DrawerEngine left = engine(true);
+    assertEquals(-200, left.clamp(-500));
+    assertEquals(-80, left.clamp(-80));
+    assertEquals(0, left.clamp(40));
+
+    DrawerEngine right = engine(false);
+    assertEquals(280, right.clamp(100));
+    assertEquals(300, right.clamp(300));
+    assertEquals(480, right.clamp(600));
+  }
+
+  @Test public void reveals() {
+    assertTrue(engine(true).reveals(-200, -180));
+    assertFalse(engine(true).reveals(-180, -200));
+    assertTrue(engine(false).reveals(480, 460));
+    assertFalse(engine(false).reveals(460, 480));
+  }
+
+  @Test public void releaseFollowsVelocity() {
+    DrawerEngine left = engine(true);
+    left.setOffset(0.9f);
+    assertEquals(-200, left.releasedLeft(-100));
+    left.setOffset(0.1f);
+    assertEquals(0, left.releasedLeft(100));
+
+    DrawerEngine right = engine(false);
+    right.setOffset(0.9f);
+    assertEquals(480, right.releasedLeft(100));
+    right.setOffset(0.1f);
+    assertEquals(280, right.releasedLeft(-100));
+  }
+
+  @Test public void releaseWithoutVelocityFollowsOffset() {
+    DrawerEngine left = engine(true);
+    left.setOffset(0.6f);
+    assertEquals(0, left.releasedLeft(0));
+    left.setOffset(0.5f);
+    assertEquals(-200, left.releasedLeft(0));
+
+    DrawerEngine right = engine(false);
+    right.setOffset(0.6f);
+    assertEquals(280, right.releasedLeft(0));
+    right.setOffset(0.4f);
+    assertEquals(480, right.releasedLeft(0));
+  }
+
+  @Test public void settledReportsOpenAndCloseOnce() {
+    DrawerEngine engine = engine(true);
+    engine.setOffset(1);
+    assertEquals(DrawerEngine.SETTLED_OPENED, engine.settled());
+    assertEquals(DrawerEngine.SETTLED_NONE, engine.settled());
+    assertTrue(engine.isOpen());
+
+    engine.setOffset(0);
+    assertEquals(DrawerEngine.SETTLED_CLOSED, engine.settled());
+    assertEquals(DrawerEngine.SETTLED_NONE, engine.settled());
+    assertFalse(engine.isOpen());
+  }
+
+  @Test public void stateIsCommittedOnce() {
+    DrawerEngine engine = engine(true);
+    assertFalse(engine.commitState());
+    engine.setDragging(true);
+    assertEquals(DrawerEngine.STATE_DRAGGING, engine.state());
+    assertTrue(engine.commitState());
+    assertFalse(engine.commitState());
+    assertEquals(DrawerEngine.STATE_DRAGGING, engine.committedState());
+  }
+
+  @Test public void settleCurveEndpoints() {
+    assertEquals(0f, DrawerEngine.settleCurve(0), 0f);
+    assertEquals(1f, DrawerEngine.settleCurve(1), 0f);
+    float previous = 0;
+    for (int i = 1; i <= 10; i++) {
+      float value = DrawerEngine.settleCurve(i / 10f);
+      assertTrue(value > previous);
+      previous = value;
+    }
+  }
+
+  @Test public void settleToCurrentPositionDoesNotStart() {
+    DrawerEngine engine = engine(true);
+    assertFalse(engine.startSettle(-200, -200, 0, 0));
+    assertFalse(engine.isSettling());
+  }
+
+  @Test public void curveSettleDurations() {
+    DrawerEngine engine = engine(true);
+    // Without velocity the duration grows with the distance, relative to the drawer's width.
+    engine.startSettle(-200, 0, 0, 0);
+    assertEquals(512, engine.settleDuration());
+    engine.startSettle(-100, 0, 0, 0);
+    assertEquals(384, engine.settleDuration());
+    // A fling covers at least half the parent's width, scaled by how far it actually goes.
+    engine.startSettle(-100, 0, 2000, 0);
+    assertEquals(416, engine.settleDuration());
+    // Flings slower than the minimum count as no fling at all.
+    engine.startSettle(-200, 0, 100, 0);
+    assertEquals(512, engine.settleDuration());
+    // Flings faster than the maximum are clamped to it.
+    engine.startSettle(-200, 0, 20000, 0);
+    assertEquals(116, engine.settleDuration());
+    // Slow flings are capped.
+    engine.startSettle(-200, 0, 500, 0);
+    assertEquals(600, engine.settleDuration());
+  }
+
+  @Test public void curveSettleDurationsMatchViewDragHelper() {
+    DrawerEngine engine = engine(true);
+    for (int dx = 1; dx <= DRAWER_WIDTH; dx += 7) {
+      for (int xvel = -10000; xvel <= 10000; xvel += 250) {
+        engine.startSettle(-dx, 0, xvel, 0);
+        assertEquals("dx=" + dx + " xvel=" + xvel, viewDragHelperDuration(dx, xvel),
+            engine.settleDuration());
+      }
+    }
+  }
+
+  /**
+   * {@code ViewDragHelper.computeSettleDuration} for a drawer as wide as {@link #DRAWER_WIDTH}
+   * moving {@code dx} horizontally in a parent as wide as {@link #PARENT_WIDTH}.
+   */
+  private static int viewDragHelperDuration(int dx, int xvel) {
+    int absXVel = Math.abs(xvel);
+    if (absXVel < MIN_VELOCITY) {
+      absXVel = 0;
+    } else if (absXVel > MAX_VELOCITY) {
+      absXVel = MAX_VELOCITY;
+    }
+    int halfWidth = PARENT_WIDTH / 2;
+    float distanceRatio = Math.min(1f, (float) Math.abs(dx) / PARENT_WIDTH);
+    float distance = halfWidth
+        + halfWidth * (float) Math.sin((distanceRatio - 0.5f) * 0.3f * Math.PI / 2.0f);
+    int duration;
+    if (absXVel > 0) {
+      duration = 4 * Math.round(1000 * Math.abs(distance / absXVel));
+    } else {
+      duration = (int) (((float) Math.abs(dx) / DRAWER_WIDTH + 1) * 256);
+    }
+    return Math.min(duration, 600);
+  }
+
+  @Test public void curveSettleSteps() {
+    DrawerEngine engine = engine(true);
+    assertTrue(engine.startSettle(-200, 0, 0, 1000));
+    assertEquals(DrawerEngine.STATE_SETTLING, engine.state());
+    assertEquals(0, engine.settleTarget());
+
+    int duration = engine.settleDuration();
+    assertEquals(-200 + Math.round(DrawerEngine.settleCurve(0.25f) * 200),
+        engine.stepSettle(1000 + duration / 4));
+    assertTrue(engine.isSettling());
+    assertEquals(-200 + Math.round(DrawerEngine.settleCurve(0.5f) * 200),
+        engine.stepSettle(1000 + duration / 2));
+    assertTrue(engine.isSettling());
+
+    assertEquals(0, engine.stepSettle(1000 + duration));
+    assertFalse(engine.isSettling());
+    assertEquals(DrawerEngine.STATE_IDLE, engine.state());
+  }
+
+  @Test public void curveSettleRetargetStartsOver() {
+    DrawerEngine engine = engine(true);
+    engine.startSettle(-200, 0, 0, 0);
+    int left = engine.stepSettle(100);
+    engine.startSettle(left, -200, 0, 100);
+    assertEquals(-200, engine.settleTarget());
+    // The curve restarts from rest at its new origin.
+    assertEquals(left, engine.stepSettle(100));
+  }
+
+  @Test public void cancelSettleStops() {
+    DrawerEngine engine = engine(true);
+    engine.startSettle(-200, 0, 0, 0);
+    engine.cancelSettle();
+    assertFalse(engine.isSettling());
+    assertEquals(DrawerEngine.STATE_IDLE, engine.state());
+  }
+
+  @Test public void springSettleEndsWithinThresholdAndStaysInBounds() {
+    DrawerEngine engine = engine(true);
+    engine.setSpring(true);
+    // A hard fling would overshoot the open position without clamping.
+    assertTrue(engine.startSettle(-200, 0, 20000, 0));
+    assertEquals(-1, engine.settleDuration());
+
+    int previous = -200;
+    long now = 0;
+    int frames = 0;
+    while (engine.isSettling()) {
+      now += FRAME;
+      int left = engine.stepSettle(now);
+      assertTrue("Moved backwards", left >= previous);
+      assertTrue("Out of bounds", left <= 0);
+      previous = left;
+      assertTrue("Never settled", ++frames < 200);
+    }
+    assertEquals(0, previous);
+  }
+
+  @Test public void springRetargetKeepsVelocity() {
+    DrawerEngine engine = engine(true);
+    engine.setSpring(true);
+    engine.startSettle(-200, 0, 4000, 0);
+    int left = engine.stepSettle(FRAME);
+    assertTrue(left > -200);
+
+    // Redirected closed with no new velocity, the drawer keeps opening briefly before it turns.
+    engine.startSettle(left, -200, 0, FRAME);
+    int next = engine.stepSettle(2 * FRAME);
+    assertTrue("Expected " + next + " to be past " + left, next > left);
+
+    long now = 2 * FRAME;
+    while (engine.isSettling()) {
+      now += FRAME;
+      next = engine.stepSettle(now);
+    }
+    assertEquals(-200, next);
+  }
+
+  @Test public void springRetargetWithVelocityUsesIt() {
+    DrawerEngine engine = engine(true);
+    engine.setSpring(true);
+    engine.startSettle(-200, 0, 4000, 0);
+    int left = engine.stepSettle(FRAME);
+
+    // A new fling replaces the spring's velocity.
+    engine.startSettle(left, -200, -4000, FRAME);
+    assertTrue(engine.stepSettle(2 * FRAME) < left);
+  }
+
+  /**
+   * The settles of {@link GestureReplayTest}'s traces, in pixels at a density of 1 for its 280dp
+   * drawer: the fling released 88dp open at 1750dp/s, the edge drag released part way, the peek
+   * closing from 20dp, and a tap closing the open drawer.
+   */
+  @Test public void springSettlesInFewerFramesThanCurve() {
+    int[][] settles = {
+        { -192, 0, 1750 },
+        { -140, 0, 0 },
+        { -260, -280, 0 },
+        { 0, -280, 0 },
+    };
+    for (int[] settle : settles) {
+      int curve = settleFrames(false, settle[0], settle[1], settle[2]);
+      int spring = settleFrames(true, settle[0], settle[1], settle[2]);
+      assertTrue(settle[0] + " to " + settle[1] + ": spring " + spring + " vs curve " + curve,
+          spring < curve);
+    }
+  }
+
+  /** Opening, closing, and opening again, each redirect coming five frames in. */
+  @Test public void redirectedSpringSettlesInFewerFramesThanCurve() {
+    int curve = redirectedSettleFrames(false);
+    int spring = redirectedSettleFrames(true);
+    assertTrue("spring " + spring + " vs curve " + curve, spring < curve);
+  }
+
+  private static int settleFrames(boolean spring, int from, int to, float xvel) {
+    DrawerEngine engine = new DrawerEngine(true);
+    engine.setSize(PARENT_WIDTH, 280);
+    engine.setVelocityRange(MIN_VELOCITY, MAX_VELOCITY);
+    engine.setSpring(spring);
+    engine.startSettle(from, to, xvel, 0);
+    return framesUntilSettled(engine, 0);
+  }
+
+  private static int redirectedSettleFrames(boolean spring) {
+    DrawerEngine engine = new DrawerEngine(true);
+    engine.setSize(PARENT_WIDTH, 280);
+    engine.setVelocityRange(MIN_VELOCITY, MAX_VELOCITY);
+    engine.setSpring(spring);
+    engine.startSettle(-192, 0, 1750, 0);
+    int left = -192;
+    long now = 0;
+    for (int i = 0; i < 5; i++) {
+      left = engine.stepSettle(now += FRAME);
+    }
+    engine.startSettle(left, -280, 0, now);
+    for (int i = 0; i < 5; i++) {
+      left = engine.stepSettle(now += FRAME);
+    }
+    engine.startSettle(left, 0, 0, now);
+    return 10 + framesUntilSettled(engine, now);
+  }
+
+  private static int framesUntilSettled(DrawerEngine engine, long now) {
+    int frames = 0;
+    while (engine.isSettling()) {
+      engine.stepSettle(now += FRAME);
+      frames++;
+    }
+    return frames;
+  }
+
+  @Test public void atRestOnlyWhenClosedAndIdle() {
+    DrawerEngine engine = engine(true);
+    assertTrue(engine.isAtRest());
+    engine.setPeeking(true);
+    assertFalse(engine.isAtRest());
+    engine.setPeeking(false);
+    engine.setOffset(0.1f);
+    assertFalse(engine.isAtRest());
+    engine.setOffset(0);
+    engine.startSettle(-200, -180, 0, 0);
+    assertFalse(engine.isAtRest());
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+/**
+ * Leaves the allocation instrumenter's recorder to the system class loader so that the sampler
+ * registered by {@link AllocationTracker} is the one which instrumented framework code reports to.
+ */
+public final class DrawerTestRunner extends RobolectricGradleTestRunner {
+  public DrawerTestRunner(Class<?> testClass) throws InitializationError {
+    super(testClass);
+  }
+
+  @Override public InstrumentationConfiguration createClassLoaderConfig() {
+    return InstrumentationConfiguration.newBuilder()
+        .doNotAquirePackage("com.google.monitoring")
+        .build();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.view.View;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class FrameMetricsTest {
+  private static final float REFRESH_RATE = 60f;
+  private static final long VSYNC = 16666667L; // ns at 60Hz
+
+  private final FakeClock clock = new FakeClock();
+  private final RecordingListener listener = new RecordingListener();
+  private FrameMetrics metrics;
+
+  @Before public void setUp() {
+    metrics = new FrameMetrics(clock, REFRESH_RATE);
+  }
+
+  @Test public void onTimeSettle() {
+    metrics.settleStarted();
+    for (int i = 0; i < 10; i++) {
+      clock.advance(VSYNC);
+      metrics.settleFrame();
+    }
+    metrics.settleFinished(listener, null);
+
+    assertEquals(1, listener.settles);
+    assertEquals(10, listener.frames);
+    assertEquals(10 * VSYNC, listener.durationNanos);
+    assertEquals(0, listener.lateFrames);
+  }
+
+  @Test public void framesMoreThanOneAndAHalfVsyncsApartAreLate() {
+    metrics.settleStarted();
+    clock.advance(VSYNC);
+    metrics.settleFrame();
+    // Just inside the threshold.
+    clock.advance(VSYNC * 3 / 2 - 1000);
+    metrics.settleFrame();
+    // A dropped frame.
+    clock.advance(2 * VSYNC);
+    metrics.settleFrame();
+    // Several dropped frames still count once.
+    clock.advance(5 * VSYNC);
+    metrics.settleFrame();
+    metrics.settleFinished(listener, null);
+
+    assertEquals(4, listener.frames);
+    assertEquals(2, listener.lateFrames);
+    assertEquals(VSYNC + VSYNC * 3 / 2 - 1000 + 7 * VSYNC, listener.durationNanos);
+  }
+
+  @Test public void lateThresholdFollowsRefreshRate() {
+    metrics = new FrameMetrics(clock, 120f);
+    metrics.settleStarted();
+    // On time at 60Hz but two frames at 120Hz.
+    clock.advance(VSYNC);
+    metrics.settleFrame();
+    metrics.settleFinished(listener, null);
+
+    assertEquals(1, listener.lateFrames);
+  }
+
+  @Test public void durationEndsAtLastFrame() {
+    metrics.settleStarted();
+    clock.advance(VSYNC);
+    metrics.settleFrame();
+    clock.advance(100 * VSYNC);
+    metrics.settleFinished(listener, null);
+
+    assertEquals(VSYNC, listener.durationNanos);
+  }
+
+  @Test public void frameWithoutStartCountsFromThatFrame() {
+    clock.advance(VSYNC);
+    metrics.settleFrame();
+    clock.advance(VSYNC);
+    metrics.settleFrame();
+    metrics.settleFinished(listener, null);
+
+    assertEquals(2, listener.frames);
+    assertEquals(VSYNC, listener.durationNanos);
+    assertEquals(0, listener.lateFrames);
+  }
+
+  @Test public void finishWithoutSettleIsIgnored() {
+    metrics.settleFinished(listener, null);
+    assertEquals(0, listener.settles);
+
+    metrics.settleStarted();
+    metrics.settleFinished(listener, null);
+    metrics.settleFinished(listener, null);
+    assertEquals(1, listener.settles);
+  }
+
+  private static final class FakeClock implements FrameMetrics.Clock {
+    private long nanos = 1000000000L;
+
+    void advance(long nanos) {
+      this.nanos += nanos;
+    }
+
+    @Override public long nanoTime() {
+      return nanos;
+    }
+  }
+
+  private static final class RecordingListener implements DrawerBehavior.FrameMetricsListener {
+    int settles;
+    int frames;
+    long durationNanos;
+    int lateFrames;
+
+    @Override public void onDrawerFrame(View drawerView, long positionNanos) {
+    }
+
+    @Override
+    public void onDrawerSettled(View drawerView, int frames, long durationNanos, int lateFrames) {
+      settles++;
+      this.frames = frames;
+      this.durationNanos = durationNanos;
+      this.lateFrames = lateFrames;
+    }
+  }
+}
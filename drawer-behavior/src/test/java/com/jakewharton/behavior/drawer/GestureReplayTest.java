@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.design.widget.CoordinatorLayout;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static android.view.View.MeasureSpec.EXACTLY;
+import static android.view.View.MeasureSpec.makeMeasureSpec;
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the gesture traces in {@code traces/} through a fresh {@link CoordinatorLayout} and its
+ * {@link DrawerBehavior}, once with the default curve settle and once with
+ * {@linkplain DrawerBehavior#setSpringSettleEnabled spring settling}. Reports nanoseconds and
+ * library allocations per dispatched event, and frames per settle. Timings are Robolectric's and
+ * are only useful compared against each other.
+ */
+@RunWith(DrawerTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public final class GestureReplayTest {
+  private static final int PARENT_WIDTH = 480;
+  private static final int PARENT_HEIGHT = 800;
+  private static final int DRAWER_WIDTH = 280;
+  /** Runs per trace. The first is a warm-up and is not reported. */
+  private static final int RUNS = 6;
+  private static final long FRAME = 16; // ms
+  /** Time after a trace's last event for any settle to finish. */
+  private static final long SETTLE_WAIT = 1000; // ms
+
+  private final AllocationTracker allocations = AllocationTracker.get();
+
+  private CoordinatorLayout parent;
+  private BehaviorDelegate delegate;
+  private long nextFrame;
+
+  // Totals for the measured runs of the current trace.
+  private int events;
+  private long eventNanos;
+  private long eventAllocations;
+  private long eventBytes;
+  private int settles;
+  private int settleFrames;
+
+  private final DrawerBehavior.FrameMetricsListener metricsListener =
+      new DrawerBehavior.FrameMetricsListener() {
+        @Override public void onDrawerFrame(View drawerView, long positionNanos) {
+        }
+
+        @Override public void onDrawerSettled(View drawerView, int frames, long durationNanos,
+            int lateFrames) {
+          settles++;
+          settleFrames += frames;
+        }
+      };
+
+  @Before public void setUp() {
+    // Settle frames are stepped by the replay, not the looper.
+    Robolectric.getForegroundThreadScheduler().pause();
+  }
+
+  @Test public void edgeDrag() throws IOException {
+    replay("edge_drag");
+  }
+
+  @Test public void fling() throws IOException {
+    replay("fling");
+  }
+
+  @Test public void multiTouch() throws IOException {
+    replay("multi_touch");
+  }
+
+  @Test public void peek() throws IOException {
+    replay("peek");
+  }
+
+  @Test public void tapToClose() throws IOException {
+    replay("tap_to_close");
+  }
+
+  private void replay(String name) throws IOException {
+    GestureTrace trace = load(name);
+    replay(trace, false);
+    replay(trace, true);
+  }
+
+  private static GestureTrace load(String name) throws IOException {
+    InputStream in = GestureReplayTest.class.getClassLoader()
+        .getResourceAsStream("traces/" + name + ".trace");
+    assertNotNull("Missing trace " + name, in);
+    try {
+      return GestureTrace.parse(name, in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private void replay(GestureTrace trace, boolean spring) {
+    events = 0;
+    eventNanos = 0;
+    eventAllocations = 0;
+    eventBytes = 0;
+    settles = 0;
+    settleFrames = 0;
+    for (int run = 0; run < RUNS; run++) {
+      replayOnce(trace, spring, run > 0);
+    }
+    assertTrue("No events replayed", events > 0);
+
+    System.out.println(String.format(Locale.US,
+        "%-24s %9d ns/event %6.2f allocs/event %7.1f bytes/event %5.1f frames/settle",
+        spring ? trace.name + "+spring" : trace.name,
+        eventNanos / events,
+        (double) eventAllocations / events,
+        (double) eventBytes / events,
+        (double) settleFrames / Math.max(settles, 1)));
+  }
+
+  private void replayOnce(GestureTrace trace, boolean spring, boolean measured) {
+    DrawerBehavior behavior = setUpParent();
+    behavior.setSpringSettleEnabled(spring);
+    if (measured) {
+      behavior.setFrameMetricsListener(metricsListener);
+    }
+    float density = parent.getResources().getDisplayMetrics().density;
+
+    long start = SystemClock.uptimeMillis();
+    nextFrame = start + FRAME;
+    long downTime = start;
+    for (GestureTrace.Event event : trace.events) {
+      advanceTo(start + event.time);
+      if (event.action == MotionEvent.ACTION_DOWN) {
+        downTime = SystemClock.uptimeMillis() - event.time;
+      }
+      MotionEvent ev = event.toMotionEvent(downTime, density, PARENT_WIDTH);
+
+      allocations.start();
+      long eventStart = System.nanoTime();
+      parent.dispatchTouchEvent(ev);
+      long took = System.nanoTime() - eventStart;
+      allocations.stop();
+
+      ev.recycle();
+      if (measured) {
+        events++;
+        eventNanos += took;
+        eventAllocations += allocations.libraryAllocations;
+        eventBytes += allocations.libraryBytes;
+      }
+    }
+    advanceTo(start + trace.duration() + SETTLE_WAIT);
+  }
+
+  /** A fresh parent means every run starts from a closed drawer. */
+  private DrawerBehavior setUpParent() {
+    // CoordinatorLayout requires an AppCompat theme.
+    Context context =
+        new ContextThemeWrapper(RuntimeEnvironment.application, R.style.Theme_AppCompat);
+    parent = new CoordinatorLayout(context);
+    // Robolectric's motion events cannot be split between children.
+    parent.setMotionEventSplittingEnabled(false);
+    parent.addView(new View(context),
+        new CoordinatorLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT));
+    DrawerBehavior behavior = new DrawerBehavior(Gravity.LEFT);
+    CoordinatorLayout.LayoutParams params =
+        new CoordinatorLayout.LayoutParams(DRAWER_WIDTH, MATCH_PARENT);
+    params.setBehavior(behavior);
+    View drawer = new FrameLayout(context);
+    parent.addView(drawer, params);
+
+    parent.measure(makeMeasureSpec(PARENT_WIDTH, EXACTLY), makeMeasureSpec(PARENT_HEIGHT, EXACTLY));
+    parent.layout(0, 0, PARENT_WIDTH, PARENT_HEIGHT);
+    delegate = (BehaviorDelegate) drawer.getTag(R.id.behavior_drawer_delegate);
+    return behavior;
+  }
+
+  /**
+   * Move the clock on to {@code time}. Delayed posts such as the peek run as their time passes.
+   * Animation posts never run for a parent without a window, so a settle is stepped here once a
+   * frame instead.
+   */
+  private void advanceTo(long time) {
+    while (nextFrame <= time) {
+      SystemClock.sleep(nextFrame - SystemClock.uptimeMillis());
+      if (delegate.isSettling()) {
+        delegate.settleFrame();
+      }
+      nextFrame += FRAME;
+    }
+    SystemClock.sleep(time - SystemClock.uptimeMillis());
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jakewharton.behavior.drawer;
+
+import android.view.MotionEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.robolectric.shadows.ShadowMotionEvent;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * A recorded touch gesture. Traces are plain text, one event per line:
+ * <pre>
+ * # Comments start with a hash.
+ * &lt;time ms> &lt;action> &lt;id>:&lt;x dp>,&lt;y dp> [&lt;id>:&lt;x dp>,&lt;y dp>]
+ * </pre>
+ * The action is one of {@code down}, {@code move}, {@code up}, {@code cancel},
+ * {@code pointer_down}, or {@code pointer_up}. For the pointer actions the pointer going down or
+ * up is prefixed with {@code *}. A negative x is measured from the right edge.
+ */
+final class GestureTrace {
+  /** Robolectric's motion events carry at most two pointers. */
+  private static final int MAX_POINTERS = 2;
+
+  static final class Event {
+    final long time;
+    final int action;
+    final int actionIndex;
+    final int[] ids;
+    final float[] xs;
+    final float[] ys;
+
+    Event(long time, int action, int actionIndex, int[] ids, float[] xs, float[] ys) {
+      this.time = time;
+      this.action = action;
+      this.actionIndex = actionIndex;
+      this.ids = ids;
+      this.xs = xs;
+      this.ys = ys;
+    }
+
+    MotionEvent toMotionEvent(long downTime, float density, int width) {
+      MotionEvent event = MotionEvent.obtain(downTime, downTime + time, action,
+          x(0, density, width), ys[0] * density, 0);
+      ShadowMotionEvent shadow = shadowOf(event);
+      if (ids.length > 1) {
+        shadow.setPointer2(x(1, density, width), ys[1] * density);
+      }
+      shadow.setPointerIds(ids[0], ids.length > 1 ? ids[1] : 0);
+      shadow.setPointerIndex(actionIndex);
+      return event;
+    }
+
+    private float x(int index, float density, int width) {
+      float x = xs[index] * density;
+      return x < 0 ? width + x : x;
+    }
+  }
+
+  static GestureTrace parse(String name, InputStream in) throws IOException {
+    List<Event> events = new ArrayList<Event>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    int lineNumber = 0;
+    for (String line; (line = reader.readLine()) != null; ) {
+      lineNumber++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] parts = line.split("\\s+");
+      if (parts.length < 3) {
+        throw new IOException(name + ":" + lineNumber + ": Expected time, action, and pointers.");
+      }
+      long time = Long.parseLong(parts[0]);
+      int count = parts.length - 2;
+      if (count > MAX_POINTERS) {
+        throw new IOException(name + ":" + lineNumber + ": More than " + MAX_POINTERS
+            + " pointers.");
+      }
+      int[] ids = new int[count];
+      float[] xs = new float[count];
+      float[] ys = new float[count];
+      int actionIndex = 0;
+      for (int i = 0; i < count; i++) {
+        String pointer = parts[i + 2];
+        if (pointer.startsWith("*")) {
+          actionIndex = i;
+          pointer = pointer.substring(1);
+        }
+        int colon = pointer.indexOf(':');
+        int comma = pointer.indexOf(',');
+        if (colon == -1 || comma < colon) {
+          throw new IOException(name + ":" + lineNumber + ": Malformed pointer '" + pointer + "'.");
+        }
+        ids[i] = Integer.parseInt(pointer.substring(0, colon));
+        xs[i] = Float.parseFloat(pointer.substring(colon + 1, comma));
+        ys[i] = Float.parseFloat(pointer.substring(comma + 1));
+      }
+      int action = parseAction(name, lineNumber, parts[1]);
+      events.add(new Event(time, action, actionIndex, ids, xs, ys));
+    }
+    if (events.size() == 0) {
+      throw new IOException(name + ": No events.");
+    }
+    return new GestureTrace(name, events);
+  }
+
+  private static int parseAction(String name, int lineNumber, String action) throws IOException {
+    switch (action) {
+      case "down":
+        return MotionEvent.ACTION_DOWN;
+      case "move":
+        return MotionEvent.ACTION_MOVE;
+      case "up":
+        return MotionEvent.ACTION_UP;
+      case "cancel":
+        return MotionEvent.ACTION_CANCEL;
+      case "pointer_down":
+        return MotionEvent.ACTION_POINTER_DOWN;
+      case "pointer_up":
+        return MotionEvent.ACTION_POINTER_UP;
+      default:
+        throw new IOException(name + ":" + lineNumber + ": Unknown action '" + action + "'.");
+    }
+  }
+
+  final String name;
+  final List<Event> events;
+
+  private GestureTrace(String name, List<Event> events) {
+    this.name = name;
+    this.events = events;
+  }
+
+  long duration() {
+    return events.get(events.size() - 1).time;
+  }
+}